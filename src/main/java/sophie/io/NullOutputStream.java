@@ -1,7 +1,7 @@
-package sophie.io;
-
-public class NullOutputStream extends java.io.OutputStream {
-    public void write(int b) throws java.io.IOException {
-
-    }
+package sophie.io;
+
+public class NullOutputStream extends java.io.OutputStream {
+    public void write(int b) throws java.io.IOException {
+
+    }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package sophie.tools.textfile.sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+class ByteLine implements CharSequence {
+	// A line of raw bytes seen as ISO-8859-1 characters, so that field splitting
+	// finds ASCII blanks and separators without decoding the line.
+	byte[] bytes;
+
+	static int utf16Order(int b) {
+		// Of a byte of well-formed UTF-8. The lead bytes of U+E000 to U+FFFF go after those of
+		// the supplementary characters, whose surrogates come before them in UTF-16.
+		return (b == 0xee || b == 0xef)? b + 0x10: b;
+	}
+
+	static int compare(byte[] thisBytes, int thisStart, int thisLimit, byte[] thatBytes, int thatStart, int thatLimit, boolean utf8) {
+		if(!utf8) {
+			return Arrays.compareUnsigned(thisBytes, thisStart, thisLimit, thatBytes, thatStart, thatLimit);
+		}
+		final int i = Arrays.mismatch(thisBytes, thisStart, thisLimit, thatBytes, thatStart, thatLimit);
+		if(i < 0) {
+			return 0;
+		} else if(i == thisLimit - thisStart || i == thatLimit - thatStart) {
+			return (thisLimit - thisStart) - (thatLimit - thatStart);
+		}
+		return utf16Order(thisBytes[thisStart + i] & 0xff) - utf16Order(thatBytes[thatStart + i] & 0xff);
+	}
+
+	static boolean isWellFormedUtf8(byte[] bytes) {
+		// As LineDecoder decodes UTF-8 without replacing anything.
+		for(int i = 0; i < bytes.length;) {
+			final int b = bytes[i] & 0xff;
+			if(b < 0x80) {
+				i++;
+				continue;
+			}
+			int more;
+			int min = 0x80;
+			int max = 0xbf;
+			if(b >= 0xc2 && b <= 0xdf) {
+				more = 1;
+			} else if(b >= 0xe0 && b <= 0xef) {
+				more = 2;
+				if(b == 0xe0) {
+					min = 0xa0;
+				} else if(b == 0xed) {
+					max = 0x9f;	// Not a surrogate
+				}
+			} else if(b >= 0xf0 && b <= 0xf4) {
+				more = 3;
+				if(b == 0xf0) {
+					min = 0x90;
+				} else if(b == 0xf4) {
+					max = 0x8f;
+				}
+			} else {
+				return false;
+			}
+			if(i + more >= bytes.length) {
+				return false;
+			}
+			final int b1 = bytes[i + 1] & 0xff;
+			if(b1 < min || b1 > max) {
+				return false;
+			}
+			for(int j = 2; j <= more; j++) {
+				if((bytes[i + j] & 0xc0) != 0x80) {
+					return false;
+				}
+			}
+			i += more + 1;
+		}
+		return true;
+	}
+
+	ByteLine set(byte[] bytes) {
+		this.bytes = bytes;
+		return this;
+	}
+
+	@Override
+	public int length() {
+		return bytes.length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return (char)(bytes[index] & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public String toString() {
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+}
\ No newline at end of file
@@ -1,5 +1,5 @@
-package sophie.tools.textfile.sort;
-
-public enum CheckKind {
-	DiagnoseFirst, Quiet, Silent
+package sophie.tools.textfile.sort;
+
+public enum CheckKind {
+	DiagnoseFirst, Quiet, Silent
 }
\ No newline at end of file
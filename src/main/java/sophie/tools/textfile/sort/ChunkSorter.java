@@ -0,0 +1,452 @@
+package sophie.tools.textfile.sort;
+
+import java.util.Arrays;
+
+class ChunkSorter extends RowSorter {
+	// Sorts a chunk of lines by their rows, the indexes of the lines in the chunk. The rows are
+	// radix sorted on the bytes of TextLine.prefix, which are in the order of the comparator, and
+	// rows the prefixes leave tied are compared by the keys in columns, a primitive array a key.
+	// A single -n or -g key is instead sorted as a column of longs.
+	// The columns are scratch arrays reused from chunk to chunk. They do not replace the fields
+	// of the lines, which the chunk files store and the merge compares.
+	static final int PREFIX_BYTES = 8;
+	TextLineComparator comparator;
+	KeyField[] keyFields;
+	TextLine[] lines;	// the chunk being sorted
+	TextLine[] sorted = new TextLine[0];
+	long[] prefixes = new long[0];
+	KeyColumn[] columns;
+	SortKind numberKind;	// Numeric or GeneralNumeric when the only key is sorted by the numbers, null otherwise
+	long[] numbers = new long[0];	// the key of each row as an unsigned long, in the order of the comparator
+	long[] numbersWork = new long[0];
+	int[] byteCounts = new int[256 + 1];
+
+	abstract class KeyColumn {
+		// The values of a key by row. A row takes its value when it first reaches the key, so a
+		// key the reader left out is still parsed only for the lines that need it.
+		final int index;	// of the key
+		final boolean reverse;
+		final boolean exact;	// equal values are equal keys, otherwise the fields tell
+		boolean[] taken = new boolean[0];
+
+		abstract void allocate(int count);
+
+		abstract void take(int row, Field field);
+
+		abstract int compareValues(int thisRow, int thatRow);
+
+		void clear(int count) {
+			if(taken.length < count) {
+				taken = new boolean[count];
+				allocate(count);
+			} else {
+				Arrays.fill(taken, 0, count, false);
+			}
+		}
+
+		int compare(int thisRow, int thatRow) {
+			if(!taken[thisRow]) {
+				take(thisRow, comparator.field(lines[thisRow], index));
+				taken[thisRow] = true;
+			}
+			if(!taken[thatRow]) {
+				take(thatRow, comparator.field(lines[thatRow], index));
+				taken[thatRow] = true;
+			}
+			final int comp = compareValues(thisRow, thatRow);
+			if(comp == 0 && !exact) {
+				return comparator.compareKey(index, lines[thisRow], lines[thatRow]);
+			}
+			return reverse? -comp: comp;
+		}
+
+		KeyColumn(int index, KeyField keyField, boolean exact) {
+			this.index = index;
+			this.reverse = keyField.reverse;
+			this.exact = exact;
+		}
+	}
+
+	final class TextColumn extends KeyColumn {
+		// Where the key is in the line, compared in place.
+		final boolean byteOrder;
+		int[] starts;
+		int[] limits;
+
+		@Override
+		void allocate(int count) {
+			starts = new int[count];
+			limits = new int[count];
+		}
+
+		@Override
+		void take(int row, Field field) {
+			starts[row] = field.start;
+			limits[row] = field.limit;
+		}
+
+		@Override
+		int compareValues(int thisRow, int thatRow) {
+			if(byteOrder) {
+				return ByteLine.compare(lines[thisRow].bytes, starts[thisRow], limits[thisRow], lines[thatRow].bytes, starts[thatRow], limits[thatRow], comparator.utf8);
+			}
+			// String.compareTo without the substrings
+			final String thisLine = lines[thisRow].line;
+			final String thatLine = lines[thatRow].line;
+			final int thisStart = starts[thisRow];
+			final int thatStart = starts[thatRow];
+			final int thisLength = limits[thisRow] - thisStart;
+			final int thatLength = limits[thatRow] - thatStart;
+			final int length = Math.min(thisLength, thatLength);
+			for(int i = 0; i < length; i++) {
+				char thisChar = thisLine.charAt(thisStart + i);
+				char thatChar = thatLine.charAt(thatStart + i);
+				if(thisChar != thatChar) {
+					return thisChar - thatChar;
+				}
+			}
+			return thisLength - thatLength;
+		}
+
+		TextColumn(int index, KeyField keyField, boolean byteOrder) {
+			super(index, keyField, true);
+			this.byteOrder = byteOrder;
+		}
+	}
+
+	final class GeneralNumericColumn extends KeyColumn {
+		long[] values;
+
+		@Override
+		void allocate(int count) {
+			values = new long[count];
+		}
+
+		@Override
+		void take(int row, Field field) {
+			values[row] = generalNumericKey(field);
+		}
+
+		@Override
+		int compareValues(int thisRow, int thatRow) {
+			return Long.compareUnsigned(values[thisRow], values[thatRow]);
+		}
+
+		GeneralNumericColumn(int index, KeyField keyField) {
+			super(index, keyField, true);
+		}
+	}
+
+	final class NumericColumn extends KeyColumn {
+		// The numbers as doubles, which keep their order but not always their differences.
+		// -h first compares the SI suffixes in signedMagnitude.
+		final boolean human;
+		short[] magnitudes;
+		double[] values;
+
+		@Override
+		void allocate(int count) {
+			magnitudes = new short[count];
+			values = new double[count];
+		}
+
+		@Override
+		void take(int row, Field field) {
+			magnitudes[row] = field.signedMagnitude;
+			values[row] = numericValue(field);
+		}
+
+		@Override
+		int compareValues(int thisRow, int thatRow) {
+			if(human && magnitudes[thisRow] != magnitudes[thatRow]) {
+				return (magnitudes[thisRow] < magnitudes[thatRow])? -1: 1;
+			}
+			final double thisValue = values[thisRow];
+			final double thatValue = values[thatRow];
+			if(Double.isNaN(thisValue) || Double.isNaN(thatValue)) {
+				return 0;	// Left to the fields
+			}
+			return Double.compare(thisValue, thatValue);
+		}
+
+		NumericColumn(int index, KeyField keyField, boolean human) {
+			super(index, keyField, false);
+			this.human = human;
+		}
+	}
+
+	final class MonthColumn extends KeyColumn {
+		short[] months;
+
+		@Override
+		void allocate(int count) {
+			months = new short[count];
+		}
+
+		@Override
+		void take(int row, Field field) {
+			months[row] = field.month;
+		}
+
+		@Override
+		int compareValues(int thisRow, int thatRow) {
+			return Integer.compare(months[thisRow], months[thatRow]);
+		}
+
+		MonthColumn(int index, KeyField keyField) {
+			super(index, keyField, true);
+		}
+	}
+
+	final class RandomColumn extends KeyColumn {
+		long[] highs;
+		long[] lows;
+
+		@Override
+		void allocate(int count) {
+			highs = new long[count];
+			lows = new long[count];
+		}
+
+		@Override
+		void take(int row, Field field) {
+			highs[row] = field.randomHigh;
+			lows[row] = field.randomLow;
+		}
+
+		@Override
+		int compareValues(int thisRow, int thatRow) {
+			final int comp = Long.compareUnsigned(highs[thisRow], highs[thatRow]);
+			return (comp != 0)? comp: Long.compareUnsigned(lows[thisRow], lows[thatRow]);
+		}
+
+		RandomColumn(int index, KeyField keyField) {
+			super(index, keyField, !Sort.GNU_SORT_COMPATIBLE);	// GNU breaks ties by the text
+		}
+	}
+
+	final class FieldColumn extends KeyColumn {
+		// Keys compared by the fields: versions, and collated, folded or CSV text.
+		@Override
+		void allocate(int count) {
+		}
+
+		@Override
+		void take(int row, Field field) {
+		}
+
+		@Override
+		int compareValues(int thisRow, int thatRow) {
+			return 0;
+		}
+
+		@Override
+		int compare(int thisRow, int thatRow) {
+			return comparator.compareKey(index, lines[thisRow], lines[thatRow]);
+		}
+
+		FieldColumn(int index, KeyField keyField) {
+			super(index, keyField, false);
+		}
+	}
+
+	private KeyColumn column(int index, KeyField keyField, Configuration configuration) {
+		switch(keyField.sortKind) {
+		case Text:
+			if(!configuration.csv && (configuration.byteOrder || (configuration.textLocale == null && !keyField.ignore && !keyField.translate))) {
+				return new TextColumn(index, keyField, configuration.byteOrder);
+			}
+			return new FieldColumn(index, keyField);
+		case GeneralNumeric:
+			return new GeneralNumericColumn(index, keyField);
+		case HumanNumeric:
+			return new NumericColumn(index, keyField, true);
+		case Numeric:
+			return new NumericColumn(index, keyField, false);
+		case Month:
+			return new MonthColumn(index, keyField);
+		case Random:
+			return new RandomColumn(index, keyField);
+		case Version:
+			return new FieldColumn(index, keyField);
+		default:
+			throw new IllegalStateException("Unknown SortKind");
+		}
+	}
+
+	private static long generalNumericKey(Field field) {
+		// generalNumericCompare: keys without a number, NaN, and then the numbers.
+		if(field.signedMagnitude < 0) {
+			return field.signedMagnitude + 2;
+		}
+		long bits = Double.doubleToLongBits(field.realNumber);	// in the order of Double.compare
+		return (bits < 0)? ~bits: bits ^ Long.MIN_VALUE;
+	}
+
+	private static double numericValue(Field field) {
+		// The mantissa and the power of ten are both exact, so the rounded quotients keep the
+		// order of the numbers. NaN for numbers that are not packed or have too many digits.
+		if(field.integralPart != null || field.mantissa >= 1L << 53) {
+			return Double.NaN;
+		}
+		double magnitude = (field.scale > 0)? field.mantissa / (double)TextLineComparator.POWERS_OF_TEN[field.scale]: field.mantissa;
+		return (field.signedMagnitude < 0)? -magnitude: magnitude;
+	}
+
+	private static long numericKey(Field field, int scale) {
+		// The magnitude in units of 10^-scale, complemented when negative. Equal keys are left to
+		// the comparator: numbers too large for a long, 2.0 and 2.00, and empty numbers and 0.
+		long magnitude = 0;
+		if(field.scale >= 0) {
+			long power = TextLineComparator.POWERS_OF_TEN[scale - field.scale];
+			magnitude = (field.mantissa > Long.MAX_VALUE / power)? Long.MAX_VALUE: field.mantissa * power;
+		}
+		return ((field.signedMagnitude < 0)? ~magnitude: magnitude) ^ Long.MIN_VALUE;
+	}
+
+	private boolean fillNumbers(int count) {
+		if(numbers.length < count) {
+			numbers = new long[count];
+			numbersWork = new long[count];
+		}
+		if(numberKind == SortKind.GeneralNumeric) {
+			for(int i = 0; i < count; i++) {
+				numbers[i] = generalNumericKey(lines[i].fields[0]);
+			}
+		} else {
+			int scale = 0;
+			for(int i = 0; i < count; i++) {
+				Field field = lines[i].fields[0];
+				if(field.integralPart != null) {
+					return false;	// Not packed
+				}
+				scale = Math.max(scale, field.scale);
+			}
+			for(int i = 0; i < count; i++) {
+				numbers[i] = numericKey(lines[i].fields[0], scale);
+			}
+		}
+		final boolean reverse = keyFields[0].reverse;
+		ensureRows(count);
+		for(int i = 0; i < count; i++) {
+			if(reverse) {
+				numbers[i] = ~numbers[i];
+			}
+			rows[i] = i;
+		}
+		return true;
+	}
+
+	private void sortNumbers(int count) {
+		// A stable LSD radix sort of the rows by the numbers, a byte a pass. Bytes all the
+		// numbers share take no pass.
+		long differences = 0;
+		for(int i = 1; i < count; i++) {
+			differences |= numbers[i] ^ numbers[0];
+		}
+		final int[] byteCount = byteCounts;
+		for(int shift = 0; shift < 64; shift += 8) {
+			if(((differences >>> shift) & 0xff) == 0) {
+				continue;
+			}
+			Arrays.fill(byteCount, 0);
+			for(int i = 0; i < count; i++) {
+				byteCount[((int)(numbers[i] >>> shift) & 0xff) + 1]++;
+			}
+			for(int b = 0; b < 256; b++) {
+				byteCount[b + 1] += byteCount[b];
+			}
+			for(int i = 0; i < count; i++) {
+				int j = byteCount[(int)(numbers[i] >>> shift) & 0xff]++;
+				numbersWork[j] = numbers[i];
+				work[j] = rows[i];
+			}
+			long[] keys = numbers;
+			numbers = numbersWork;
+			numbersWork = keys;
+			int[] indexes = rows;
+			rows = work;
+			work = indexes;
+		}
+		for(int start = 0; start < count;) {
+			int limit = start + 1;
+			for(; limit < count && numbers[limit] == numbers[start]; limit++) {
+			}
+			if(limit - start > 1) {
+				mergeSort(start, limit, 0);	// The same numbers
+			}
+			start = limit;
+		}
+	}
+
+	@Override
+	int digit(int row, int depth) {
+		return ((int)(prefixes[row] >>> ((PREFIX_BYTES - 1 - depth) * 8)) & 0xff) + 1;
+	}
+
+	@Override
+	int sharedDepth(int start, int limit, int depth) {
+		// The leading bytes all the prefixes share, so that passes which would find a single
+		// bucket are skipped.
+		final long first = prefixes[rows[start]];
+		long differences = 0;
+		for(int i = start + 1; i < limit; i++) {
+			differences |= prefixes[rows[i]] ^ first;
+		}
+		return Long.numberOfLeadingZeros(differences) / 8;
+	}
+
+	@Override
+	int compare(int thisRow, int thatRow, int depth) {
+		if(prefixes[thisRow] != prefixes[thatRow]) {
+			return Long.compareUnsigned(prefixes[thisRow], prefixes[thatRow]);
+		}
+		for(KeyColumn column: columns) {
+			final int comp = column.compare(thisRow, thatRow);
+			if(comp != 0) {
+				return comp;
+			}
+		}
+		return comparator.compareLastResort(lines[thisRow], lines[thatRow]);
+	}
+
+	void sort(TextLine[] lines, int count) {
+		this.lines = lines;
+		if(prefixes.length < count) {
+			prefixes = new long[count];
+			sorted = new TextLine[count];
+		}
+		for(int i = 0; i < count; i++) {
+			prefixes[i] = lines[i].prefix;
+		}
+		for(KeyColumn column: columns) {
+			column.clear(count);
+		}
+		if(numberKind != null && fillNumbers(count)) {
+			sortNumbers(count);
+		} else {
+			sortRows(count);
+		}
+		for(int i = 0; i < count; i++) {
+			sorted[i] = lines[rows[i]];
+		}
+		System.arraycopy(sorted, 0, lines, 0, count);
+		Arrays.fill(sorted, 0, count, null);	// Lets the lines go with the chunk
+		this.lines = null;
+	}
+
+	ChunkSorter(TextLineComparator comparator, Configuration configuration) {
+		super(PREFIX_BYTES);
+		this.comparator = comparator;
+		this.keyFields = configuration.keyFields;
+		columns = new KeyColumn[keyFields.length];
+		for(int i = 0; i < keyFields.length; i++) {
+			columns[i] = column(i, keyFields[i], configuration);
+		}
+		if(keyFields.length == 1
+				&& (keyFields[0].sortKind == SortKind.Numeric || keyFields[0].sortKind == SortKind.GeneralNumeric)) {
+			// A single numeric key is sorted by the numbers instead of by the prefixes.
+			numberKind = keyFields[0].sortKind;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+package sophie.tools.textfile.sort;
+
+class CsvSplitter {
+	// Splits a CSV record into fields as start and limit pairs in a reused array,
+	// the way com.csvreader.CsvReader used to read them. Only the fields keys take
+	// are made into strings. Splitting stops at the last field a key refers to.
+	int[] indexes;
+	boolean[] escaped;	// the field has doubled quotes in it
+	int count;	// the number of fields in indexes
+	int maxFields;
+	char delimiter;
+
+	private boolean isBlank(char c) {
+		return (c == ' ' || c == '\t') && c != delimiter;
+	}
+
+	void split(CharSequence record) {
+		final int length = record.length();
+		final char delimiter = this.delimiter;
+		int n = 0;
+		int i = 0;
+		for(;;) {
+			for(; i < length && isBlank(record.charAt(i)); i++) {
+			}
+			int start;
+			int limit;	// The closing quote, or the value without trailing blanks
+			boolean escaped = false;
+			if(i < length && record.charAt(i) == '"') {
+				start = ++i;
+				for(;;) {
+					if(i >= length) {
+						limit = i;
+						break;
+					}
+					char c = record.charAt(i);
+					if(c == '"') {
+						if(i + 1 < length && record.charAt(i + 1) == '"') {
+							escaped = true;
+							i += 2;
+							continue;
+						}
+						limit = i++;
+						break;
+					}
+					i++;
+				}
+				for(; i < length && record.charAt(i) != delimiter && record.charAt(i) != '\n' && record.charAt(i) != '\r'; i++) {
+					// Nothing to do. (Characters after the closing quote are dropped)
+				}
+			} else {
+				start = i;
+				for(; i < length && record.charAt(i) != delimiter && record.charAt(i) != '\n' && record.charAt(i) != '\r'; i++) {
+				}
+				limit = i;
+				if(i < length) {
+					for(; limit > start && isBlank(record.charAt(limit - 1)); limit--) {
+					}
+				} else {
+					// At the end of the record only spaces were trimmed.
+					for(; limit > start && record.charAt(limit - 1) == ' ' && delimiter != ' '; limit--) {
+					}
+				}
+			}
+			indexes[n * 2] = start;
+			indexes[n * 2 + 1] = limit;
+			this.escaped[n] = escaped;
+			n++;
+			if(n == maxFields || i >= length || record.charAt(i) != delimiter) {
+				count = n;
+				return;
+			}
+			i++;
+		}
+	}
+
+	String value(String record, int index) {
+		// The field made into a string with doubled quotes undone.
+		int start = indexes[index * 2];
+		int limit = indexes[index * 2 + 1];
+		if(!escaped[index]) {
+			return record.substring(start, limit);
+		}
+		StringBuilder builder = new StringBuilder(limit - start);
+		for(int i = start; i < limit; i++) {
+			char c = record.charAt(i);
+			builder.append(c);
+			if(c == '"') {
+				i++;
+			}
+		}
+		return builder.toString();
+	}
+
+	CsvSplitter(Configuration configuration) {
+		delimiter = configuration.defaultFieldSeparator? ',': configuration.fieldSeparator;
+		maxFields = 1;
+		for(KeyField keyField: configuration.keyFields) {
+			if(keyField.startField != Integer.MAX_VALUE) {
+				maxFields = Math.max(maxFields, keyField.startField);
+			}
+		}
+		indexes = new int[maxFields * 2];
+		escaped = new boolean[maxFields];
+	}
+}
\ No newline at end of file
@@ -1,696 +1,348 @@
-package sophie.tools.textfile.sort;
-
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.EOFException;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringReader;
-import java.io.UnsupportedEncodingException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.text.DateFormatSymbols;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.text.NumberFormat;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Locale;
-import java.util.NoSuchElementException;
-import java.util.regex.Pattern;
-
-class ExternalTextFileIterator implements Iterator<TextLine> {
-	Pattern generalNumericPattern = Pattern.compile("(\\+|-|)(\\.|\\d).*");
-	Pattern generalNumericNanInfinityPattern = Pattern.compile("(?i)(\\+|-|)(Nan|Infinity|Inf)");
-	Configuration configuration;
-	KeyField[] keyFields;
-	boolean hasCr = false;
-	boolean hasNl = false;
-	boolean hasCrLf = false;
-	boolean debug;
-	char decimalPoint;
-	char groupSeperator;
-	String[] files;
-	int fileIndex;
-	MessageDigest messageDigest;
-	boolean messageDigestHasSeed;
-	boolean messageDigestCloneable;
-	byte[] messageDigestSeed;
-	InputStream in;
-	TextLine textLine;
-	HashMap<String, Integer> monthMap;
-	ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-	int lastChar;
-	long lineSeq;
-	int fileNumber;
-	int lineNumber;
-	int headerLines;
-	boolean headerEveryFile;
-	String[] header;
-	
-	String lineSeparator() {
-		if((hasCr? 1: 0) + (hasNl? 1: 0) + (hasCrLf? 1: 0) == 1) {
-			if(hasCr)
-				return "\r";
-			else if(hasNl)
-				return "\n";
-			else
-				return "\r\n";
-		}
-		return System.getProperty("line.separator");
-	}
-	
-	
-	public String[] getHeader() {
-		if(header == null) {
-			return null;
-		} else {
-			int i;
-			for(i = 0; i < header.length; i++) {
-				if(header[i] == null) {
-					break;
-				}
-			}
-			String[] header = new String[i];
-			System.arraycopy(this.header, 0, header, 0, i);
-			return header;
-		}
-	}
-
-	private String readLine() throws IOException {
-		for(;;) {
-			if(in == null) {
-				if(fileIndex < files.length) {
-					String file = files[fileIndex];
-					if(file == null || file.equals("-")) {
-						in = System.in;
-					} else {
-						in = new BufferedInputStream(new FileInputStream(file));
-					}
-				} else {
-					throw new EOFException();
-				}
-				lastChar = -1;
-				fileNumber++;
-				lineNumber = 0;
-			}
-			int c;
-			while((c = in.read()) != -1) {
-				if(configuration.zeroTerminated) {
-					if(c == 0 && configuration.zeroTerminated) {
-						String line = new String(buffer.toByteArray(), configuration.inputEncoding);
-						buffer.reset();
-						lineSeq++;
-						lineNumber++;
-						if(lineNumber > headerLines || (!headerEveryFile && fileNumber > 1)) {
-							return line;
-						} else {
-							if(fileNumber == 1) {
-								header[lineNumber - 1] = line;
-							}
-						}
-					} else {
-						buffer.write(c);
-					}
-				} else {
-					if(c == '\n') {
-						if(lastChar == '\r') {
-							hasCrLf = true;
-							lastChar = c;
-						} else {
-							hasNl = true;
-							lastChar = c;
-							String line = new String(buffer.toByteArray(), configuration.inputEncoding);
-							buffer.reset();
-							lineSeq++;
-							lineNumber++;
-							if(lineNumber > headerLines || (!headerEveryFile && fileNumber > 1)) {
-								return line;
-							} else {
-								if(fileNumber == 1) {
-									header[lineNumber - 1] = line;
-								}
-							}
-						}
-					} else if(c == '\r') {
-						if(lastChar == '\r') {
-							hasCr = true;
-						}
-						lastChar = c;
-						String line = new String(buffer.toByteArray(), configuration.inputEncoding);
-						buffer.reset();
-						lineSeq++;
-						lineNumber++;
-						if(lineNumber > headerLines || (!headerEveryFile && fileNumber > 1)) {
-							return line;
-						} else {
-							if(fileNumber == 1) {
-								header[lineNumber - 1] = line;
-							}
-						}
-					} else {
-						if(lastChar == '\r') {
-							hasCr = true;
-						}
-						lastChar = c;
-						buffer.write(c);
-					}
-				}
-			}
-			if(configuration.zeroTerminated) {
-				if(lastChar == '\r') {
-					hasCr = true;
-				}
-			}
-			if(buffer.size() != 0) {
-				String line = new String(buffer.toByteArray(), configuration.inputEncoding);
-				buffer.reset();
-				lineSeq++;
-				lineNumber++;
-				if(lineNumber > headerLines || (!headerEveryFile && fileNumber > 1)) {
-					return line;
-				} else {
-					if(fileNumber == 1) {
-						header[lineNumber - 1] = line;
-					}
-				}
-			}
-			if(files[fileIndex] != null && !files[fileIndex].equals("-")) {
-				in.close();
-			}
-			in = null;  // Force to open next file
-			fileIndex++;
-		}
-	}
-	
-	private void takeGeneralNumeric(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex, boolean allowSIsuffix) {
-		if(keyField.ignore || keyField.translate) {
-			line = Sort.transform(keyField, line, startFieldIndex, endFieldIndex);
-			startFieldIndex = 0;
-			endFieldIndex = line.length();
-		}
-		String trimmed = line.substring(startFieldIndex, endFieldIndex).trim();
-		final short signedMagnetude;
-		final double realNumber;
-		if(generalNumericPattern.matcher(trimmed).matches()) {
-			signedMagnetude = 0;
-			realNumber = Double.valueOf(trimmed);
-		} else if(generalNumericNanInfinityPattern.matcher(trimmed).matches()) {
-			boolean minus = false;
-			if(trimmed.startsWith("+")) {
-				trimmed = trimmed.substring(1);
-			} else if(trimmed.startsWith("-")) {
-				minus = true;
-				trimmed = trimmed.substring(1);
-			} else {
-				// Nooo
-			}
-			if(trimmed.equalsIgnoreCase("Nan")) {
-				signedMagnetude = -1;
-				realNumber = Double.NaN;
-			} else {
-				signedMagnetude = 0;
-				realNumber = minus? Double.NEGATIVE_INFINITY: Double.POSITIVE_INFINITY;
-			}
-		} else {
-			signedMagnetude = -2;
-			realNumber = 0;
-		}
-		field.signedMagnitude = signedMagnetude;
-		field.realNumber = realNumber;
-	}
-	
-	private void takeNumeric(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex, boolean allowSIsuffix) {
-		if(keyField.ignore || keyField.translate) {
-			line = Sort.transform(keyField, line, startFieldIndex, endFieldIndex);
-			startFieldIndex = 0;
-			endFieldIndex = line.length();
-		}
-		StringBuilder intBuilder = new StringBuilder();
-		StringBuilder fracBuilder = new StringBuilder();
-		char[] ca = line.toCharArray(); 
-		int i = startFieldIndex;
-		// Let's skip leading blanks.
-		for(; i < endFieldIndex && Character.isWhitespace(ca[i]); i++) {
-			// Nothing to do;
-		}
-		if(i < endFieldIndex && ca[i] == '-') {
-			field.signedMagnitude = -1;
-			i++;
-		}
-		// Let's skip leading zeros.
-		boolean hasLeadingZero = false;
-		for(; i < endFieldIndex &&
-				(ca[i] == '0' ||
-				ca[i] == groupSeperator ||
-				(groupSeperator == 0xa0 && ca[i] == ' ' && i + 1 < endFieldIndex && Character.isDigit(ca[i+1])) // French has 0xa0 as group separator
-				// || (decimalPoint == '.' && ca[i] == ',') || // not in the specification but seems helpful
-				|| (decimalPoint == ',' && ca[i] == '.') // not in the specification but seems helpful
-				);
-			i++) {
-			hasLeadingZero = true;
-		}
-		for(; i < endFieldIndex &&
-				(Character.isDigit(ca[i]) ||
-				ca[i] == groupSeperator ||
-				(groupSeperator == 0xa0 && ca[i] == ' ' && i + 1 < endFieldIndex && Character.isDigit(ca[i+1])) // French has 0xa0 as group separator
-				// || (decimalPoint == '.' && ca[i] == ',') || // not in the specification but seems helpful
-				|| (decimalPoint == ',' && ca[i] == '.') // not in the specification but seems helpful
-				);
-			i++) {
-			if(Character.isDigit(ca[i]))
-				intBuilder.append(ca[i]);
-		}
-		if(intBuilder.length() == 0 && (hasLeadingZero || (i < endFieldIndex && ca[i] == decimalPoint))) {
-			intBuilder.append('0');
-		}
-		if(i < endFieldIndex && ca[i] == decimalPoint) {
-			i++;
-			for(; i < endFieldIndex &&
-					(Character.isDigit(ca[i]) ||
-					ca[i] == groupSeperator ||
-					(groupSeperator == 0xa0 && ca[i] == ' ' && i + 1 < endFieldIndex && Character.isDigit(ca[i+1])) // French has 0xa0 as group separator
-					// || (decimalPoint == '.' && ca[i] == ',') || // not in the specification but seems helpful
-					|| (decimalPoint == ',' && ca[i] == '.') // not in the specification but seems helpful
-					);
-				i++) {
-				if(Character.isDigit(ca[i]))
-					fracBuilder.append(ca[i]);
-			}
-		}
-		if(allowSIsuffix) {
-			if(i < endFieldIndex) {
-				char suffix = ca[i];
-				i++;
-				if(suffix == 'k') suffix = 'K';
-				// suffix = Character.toUpperCase(suffix); // This one relaxes the specification.
-				int index = Sort.SIunit.indexOf(suffix);
-				if(index >= 0) {
-					int sign = (field.signedMagnitude >= 0)? 1: -1;
-					field.signedMagnitude = (short)(sign * (index + 1));
-				}
-			}
-		}
-		char[] intDigits = intBuilder.toString().toCharArray();
-		char[] fracDigits = fracBuilder.toString().toCharArray();
-		field.integralPart = new byte[intDigits.length];
-		for(int k = 0; k < intDigits.length; k++) {
-			field.integralPart[k] = (byte)intDigits[k];
-		}
-		field.fractionalPart = new byte[fracDigits.length];
-		for(int k = 0; k < fracDigits.length; k++) {
-			field.fractionalPart[k] = (byte)fracDigits[k];
-		}
-	}
-
-	private void takeMonth(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex) {
-		if(keyField.ignore || keyField.translate) {
-			line = Sort.transform(keyField, line, startFieldIndex, endFieldIndex);
-			startFieldIndex = 0;
-			endFieldIndex = line.length();
-		}
-		char[] ca = line.toCharArray(); 
-		int i = startFieldIndex;
-		// Let's skip leading blanks.
-		for(; i < endFieldIndex && Character.isWhitespace(ca[i]); i++) {
-			// Nothing to do;
-		}
-		if(i < endFieldIndex) {
-			int c = ca[i];
-			int begin = i;
-			i++;
-			if(Character.isDigit(c)) {
-				for(; i < endFieldIndex && Character.isDigit(ca[i]); i++) {
-				}
-				int month = Integer.valueOf(line.substring(begin, i));
-				if(month > 12) {
-					month = 0;
-				}
-				field.month = (short)month;
-			} else if(Character.isJavaIdentifierPart(c)) {
-				for(; i < endFieldIndex && Character.isJavaIdentifierPart(ca[i]); i++) {
-				}
-				String  monthName = line.substring(begin, i).toUpperCase();
-				Integer month = monthMap.get(monthName);
-				field.month = (short)((month != null)? month: 0);
-			} else {
-				// Nothing to do. (field.month is already initialized)
-			}
-		} else {
-			// Nothing to do. (field.month is already initialized)
-		}
-	}
-
-	private void takeRandom(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex) throws IOException {
-		if(Sort.GNU_SORT_COMPATIBLE) {
-			field.start = (short)startFieldIndex;
-			field.limit = (short)endFieldIndex;
-			field.text = line.substring(startFieldIndex, endFieldIndex);
-		}
-		if(keyField.ignore || keyField.translate) {
-			line = Sort.transform(keyField, line, startFieldIndex, endFieldIndex);
-			startFieldIndex = 0;
-			endFieldIndex = line.length();
-		}
-		try {
-			byte[] bytes= line.substring(startFieldIndex, endFieldIndex).getBytes("UTF-8");
-			final byte[] digest;
-			if(messageDigestHasSeed) {
-				if(messageDigestCloneable) {
-					MessageDigest md = (MessageDigest)messageDigest.clone();
-					digest = md.digest(bytes);
-				} else {
-					messageDigest.reset();
-					messageDigest.update(messageDigestSeed);
-					digest = messageDigest.digest(bytes);
-				}
-			} else {
-				messageDigest.reset();
-				digest = messageDigest.digest(bytes);
-			}
-			field.digest = digest;
-		} catch(UnsupportedEncodingException e) {
-			throw new IOException(e);
-		} catch(CloneNotSupportedException e) {
-			throw new IOException(e);
-		}
-	}
-	
-	private void takeVersion(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex)  {
-		if(keyField.ignore || keyField.translate) {
-			line = Sort.transform(keyField, line, startFieldIndex, endFieldIndex);
-			startFieldIndex = 0;
-			endFieldIndex = line.length();
-		}
-		char[] ca = line.toCharArray();
-		int i = startFieldIndex;
-		StringBuilder builder = new StringBuilder();
-		for(; i < endFieldIndex && Character.isWhitespace(ca[i]); i++) {
-			// Nothing to do;
-		}
-		for(; i < endFieldIndex && Sort.isPrintable(ca[i]) && !Character.isWhitespace(ca[i]); i++) {
-			builder.append(ca[i]);
-		}
-		field.version = builder.toString();
-	}
-	
-	private TextLine read() throws IOException {
-		String line = readLine();
-		TextLine textLine = new TextLine();
-		textLine.seq = lineSeq;
-		if(keyFields.length != 0) {
-			textLine.fields = new Field[keyFields.length];
-			if(configuration.csv) {
-				com.csvreader.CsvReader csvReader = new com.csvreader.CsvReader(new StringReader(line), configuration.defaultFieldSeparator? ',': configuration.fieldSeparator);
-				try {
-					csvReader.readRecord();
-					String[] values = csvReader.getValues();
-					for(int i = 0; i < keyFields.length; i++) {
-						KeyField keyField = keyFields[i];
-						Field field = textLine.fields[i] = new Field();
-						int valueIndex = (keyField.startField == Integer.MAX_VALUE)? 0: keyField.startField - 1;
-						String value = (valueIndex  < values.length)? values[valueIndex]: "";
-						int startIndex = Math.min(value.length(), ((keyField.startChar > 0)? keyField.startChar - 1: 0));
-						int limitIndex = keyField.endChar != 0? Math.min(value.length(), keyField.endChar): value.length();
-						if(keyField.skipStartBlanks) {
-							for(; startIndex < limitIndex && Character.isWhitespace(value.charAt(startIndex)); startIndex++) {
-								// Nothing to do
-							}
-						}
-						if(keyField.skipEndBlanks) {
-							for(; limitIndex > startIndex && Character.isWhitespace(value.charAt(limitIndex - 1)); limitIndex--) {
-								// Nothing to do
-							}
-						}
-						if(debug) {
-							System.out.println("file: " + fileNumber + " line: " + lineNumber + " key[" + i +  "] , " + keyFields[i].sortKind + "(" + startIndex + ", " + limitIndex + "): \"" + value.substring(startIndex, limitIndex) + "\"");
-						}
-						try {
-							switch(keyFields[i].sortKind) {
-							case Text:
-								field.start = -1;
-								field.limit = -1;
-								field.text = value.substring(startIndex, limitIndex);
-								break;
-							case GeneralNumeric:
-								takeGeneralNumeric(keyField, field, value, startIndex, limitIndex, true);
-								break;
-							case HumanNumeric:
-								takeNumeric(keyField, field, value, startIndex, limitIndex, true);
-								break;
-							case Numeric:
-								takeNumeric(keyField, field, value, startIndex, limitIndex, false);
-								break;
-							case Month:
-								takeMonth(keyField, field, value, startIndex, limitIndex);
-								break;
-							case Random:
-								takeRandom(keyField, field, value, startIndex, limitIndex);
-								break;
-							case Version:
-								takeVersion(keyField, field, value, startIndex, limitIndex);
-								break;
-							default:
-								throw new IllegalStateException("Unknown SortKind");
-							}
-						} catch(Exception e) {
-							throw new RuntimeException("file: " + fileNumber + " line: " + lineNumber + " key[" + i +  "] , " + keyFields[i].sortKind + ": " + e, e);
-						}
-					}
-				} finally {
-					csvReader.close();
-				}
-				
-			} else {
-				int[] fieldIndexes = configuration.defaultFieldSeparator? Sort.splitLine(line): Sort.splitLine(line, configuration.fieldSeparator);
-				for(int i = 0; i < keyFields.length; i++) {
-					KeyField keyField = keyFields[i];
-					Field field = textLine.fields[i] = new Field();
-					int startFieldIndex;
-					int startFieldLimit;
-					int endFieldIndex;
-					int endFieldLimit;
-					if(keyField.startField == Integer.MAX_VALUE) {
-						startFieldIndex = 0;
-						startFieldLimit = endFieldIndex = endFieldLimit = line.length(); 
-					} else {
-						if(keyField.startField <= fieldIndexes.length / 2) {
-							int index = keyField.startField > 0? (keyField.startField - 1) * 2: 0;
-							startFieldIndex = fieldIndexes[index];
-							startFieldLimit = fieldIndexes[index + 1];
-						} else {
-							startFieldIndex = startFieldLimit = line.length();
-						}
-						if(keyField.endField <= fieldIndexes.length / 2) {
-							int index = keyField.endField > 0? (keyField.endField - 1) * 2: 0;
-							endFieldIndex = fieldIndexes[index];
-							endFieldLimit = fieldIndexes[index + 1];
-						} else {
-							endFieldIndex = endFieldLimit = line.length();
-						}
-					}
-					if(keyField.skipStartBlanks) {
-						for(; startFieldIndex < (Sort.GNU_SORT_COMPATIBLE? line.length(): startFieldLimit) && Character.isWhitespace(line.charAt(startFieldIndex)); startFieldIndex++) {
-							// Nothing to do
-						}
-					}
-					startFieldIndex = Math.min(startFieldLimit, startFieldIndex + ((keyField.startChar > 0)? keyField.startChar - 1: 0));
-					/*
-					// up to version 1.0.2
-					if(keyField.endChar == 0) {
-						endFieldIndex = endFieldLimit;
-					} else {
-						if(keyField.skipEndBlanks) {
-							for(; endFieldIndex < (Sort.GNU_SORT_COMPATIBLE? line.length(): endFieldLimit) && Character.isWhitespace(line.charAt(endFieldIndex)); endFieldIndex++) {
-								// Nothing to do
-							}
-						}
-						endFieldIndex = Math.min(endFieldLimit, endFieldIndex + keyField.endChar);
-					}
-					// end of up to version 1.0.2
-					*/
-					// version 1.1.0
-					if(keyField.endChar != 0) {
-						endFieldLimit = Math.min(endFieldLimit, endFieldIndex + keyField.endChar);
-					}
-					if(keyField.skipEndBlanks) {
-						for(; endFieldLimit > endFieldIndex && Character.isWhitespace(line.charAt(endFieldLimit - 1)); endFieldLimit--) {
-							// Nothing to do
-						}
-					}
-					endFieldIndex = endFieldLimit;
-					if(endFieldIndex < startFieldIndex) {
-						endFieldIndex = startFieldIndex;
-					}
-					// end of version 1.1.0
-					if(debug) {
-						System.out.println("file: " + fileNumber + " line: " + lineNumber + " key[" + i +  "] , " + keyFields[i].sortKind + "(" + startFieldIndex + ", " + endFieldIndex + "): \"" + line.substring(startFieldIndex, endFieldIndex) + "\"");
-					}
-					try {
-						switch(keyFields[i].sortKind) {
-						case Text:
-							field.start = (short)startFieldIndex;
-							field.limit = (short)endFieldIndex;
-							field.text = null;
-							break;
-						case GeneralNumeric:
-							takeGeneralNumeric(keyField, field, line, startFieldIndex, endFieldIndex, true);
-							break;
-						case HumanNumeric:
-							takeNumeric(keyField, field, line, startFieldIndex, endFieldIndex, true);
-							break;
-						case Numeric:
-							takeNumeric(keyField, field, line, startFieldIndex, endFieldIndex, false);
-							break;
-						case Month:
-							takeMonth(keyField, field, line, startFieldIndex, endFieldIndex);
-							break;
-						case Random:
-							takeRandom(keyField, field, line, startFieldIndex, endFieldIndex);
-							break;
-						case Version:
-							takeVersion(keyField, field, line, startFieldIndex, endFieldIndex);
-							break;
-						default:
-							throw new IllegalStateException("Unknown SortKind");
-						}
-					} catch(Exception e) {
-						throw new RuntimeException("file: " + fileNumber + " line: " + lineNumber + " key[" + i +  "] , " + keyFields[i].sortKind + ": " + e, e);
-					}
-				}
-			}
-		}
-		textLine.line = line;
-		return textLine;
-	}
-
-	@Override
-	public boolean hasNext() {
-		if(this.textLine != null)
-			return true;
-		try {
-			this.textLine = read();
-			return true;
-		} catch (EOFException e) {
-			return false;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	@Override
-	public TextLine next() {
-		if(this.textLine != null) {
-			TextLine textLine = this.textLine;
-			this.textLine = null;
-			return textLine;
-		} else {
-			try {
-				TextLine textLine = read();
-				return textLine;
-			} catch (EOFException e) {
-				throw new NoSuchElementException("EOF");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-		}
-	}
-
-	@Override
-	public void remove() {
-		throw new UnsupportedOperationException();
-	}
-	
-	private void setUpMessageDigest() throws IOException {
-		try {
-			messageDigest = MessageDigest.getInstance("MD5");
-			if(configuration.randomSource != null) {
-				messageDigestHasSeed = true;
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				InputStream in = new FileInputStream(configuration.randomSource);
-				try {
-					int c;
-					for(int i = 0; i < 4096 && (c = in.read()) != -1 ; i++) {
-						out.write(c);
-					}
-				} finally {
-					in.close();
-				}
-				messageDigestSeed = out.toByteArray();
-				messageDigest.update(messageDigestSeed);
-				try {
-					messageDigest.clone();
-					messageDigestCloneable = true;
-				} catch (CloneNotSupportedException e) {
-					// messageDigestCloneable = false; // redundant
-				}
-			}
-		} catch (NoSuchAlgorithmException e) {
-			throw new IOException(e);
-		}
-	}
-			
-	void setFile(String file) {
-		files = new String[] {file};
-		fileIndex = 0;
-	}
-	
-	ExternalTextFileIterator(Configuration configuration) throws IOException {
-		this.configuration = configuration;
-		this.keyFields = configuration.keyFields;
-		if(configuration.inputFileNames == null) {
-			files = new String[] {null};
-		} else {
-			files = configuration.inputFileNames;
-		}
-		if(configuration.headerLines > 0) {
-			headerLines = configuration.headerLines;
-			header = new String[headerLines];
-			headerEveryFile = configuration.headerEveryFile;
-		}
-		
-		debug = configuration.debug;
-		if(configuration.numberLocale != null) {
-  	  		NumberFormat numberFormat = (DecimalFormat)DecimalFormat.getInstance(configuration.numberLocale);
-  	  		if(numberFormat instanceof DecimalFormat) {
-  	  			DecimalFormat decimalFormat = (DecimalFormat) numberFormat;
-  	  			DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
-  	  			decimalPoint = symbols.getDecimalSeparator();
-  	  			groupSeperator = symbols.getGroupingSeparator();
-   	  		} else {
-				decimalPoint = '.';
-				groupSeperator = ',';
-   	  		}
-		} else {
-			decimalPoint = '.';
-			groupSeperator = ',';
-		}
-		monthMap = new HashMap<String, Integer>();
-		HashSet<Locale> localeSet = new HashSet<Locale>();
-		localeSet.add(Locale.forLanguageTag("en-US"));
-		localeSet.add(Locale.getDefault());
-		if(configuration.textLocale != null) {
-			localeSet.add(configuration.textLocale);
-		}
-		if(configuration.numberLocale != null) {
-			localeSet.add(configuration.numberLocale);
-		}
-		for(Locale locale: localeSet) {
-			DateFormatSymbols dateFormatSymbols = DateFormatSymbols.getInstance(locale);
-			String[] shortMonthNames = dateFormatSymbols.getShortMonths();
-			String[] monthNames = dateFormatSymbols.getMonths();
-			// For some reason, shortMonthNames.length == monthNames.length == 13
-			for(int i = 0; i < shortMonthNames.length && i < 12; i++) {
-				monthMap.put(shortMonthNames[i].toUpperCase(), i + 1);
-			}
-			for(int i = 0; i < monthNames.length && i < 12; i++) {
-				monthMap.put(monthNames[i].toUpperCase(), i + 1);
-			}
-		}
-		if(configuration.hasRandom) {
-			setUpMessageDigest();
-		}
-	}
+package sophie.tools.textfile.sort;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+class ExternalTextFileIterator implements Iterator<TextLine> {
+	static final int BATCH_SIZE = 4096;
+	Configuration configuration;
+	String[] files;
+	int fileIndex;
+	ReadableByteChannel channel;
+	LineScanner scanner;
+	TextLineParser parser;
+	TextLine textLine;
+	long lineSeq;
+	int fileNumber;
+	int lineNumber;
+	int headerLines;
+	boolean headerEveryFile;
+	String[] header;
+	ExecutorService executor;
+	BlockingQueue<TextLineParser> parsers;
+	ArrayDeque<Future<TextLine[]>> batches;
+	int maxBatches;
+	TextLine[] batch;
+	int batchIndex;
+	boolean inputExhausted;
+	
+	String lineSeparator() {
+		if(configuration.recordLength > 0) {
+			return "";
+		}
+		boolean hasCr = scanner.hasCr;
+		boolean hasNl = scanner.hasNl;
+		boolean hasCrLf = scanner.hasCrLf;
+		if((hasCr? 1: 0) + (hasNl? 1: 0) + (hasCrLf? 1: 0) == 1) {
+			if(hasCr)
+				return "\r";
+			else if(hasNl)
+				return "\n";
+			else
+				return "\r\n";
+		}
+		return System.getProperty("line.separator");
+	}
+	
+	
+	public String[] getHeader() {
+		if(header == null) {
+			return null;
+		} else {
+			int i;
+			for(i = 0; i < header.length; i++) {
+				if(header[i] == null) {
+					break;
+				}
+			}
+			String[] header = new String[i];
+			System.arraycopy(this.header, 0, header, 0, i);
+			return header;
+		}
+	}
+
+	private static boolean isGzip(FileChannel channel) throws IOException {
+		ByteBuffer magic = ByteBuffer.allocate(2);
+		while(magic.hasRemaining() && channel.read(magic, magic.position()) > 0) {
+			// Nothing to do.
+		}
+		return magic.position() == 2 && (magic.get(0) & 0xff) == 0x1f && (magic.get(1) & 0xff) == 0x8b;
+	}
+
+	private static boolean isGzip(PushbackInputStream in) throws IOException {
+		// For pipes, which cannot be read at a position. The bytes read are pushed back.
+		byte[] magic = new byte[2];
+		int length = 0;
+		int n;
+		while(length < magic.length && (n = in.read(magic, length, magic.length - length)) > 0) {
+			length += n;
+		}
+		in.unread(magic, 0, length);
+		return length == 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b;
+	}
+	
+	private ReadableByteChannel openStream(InputStream in) {
+		if(configuration.readAheadBuffers > 0) {
+			return new ReadAheadChannel(in, configuration.readAheadBuffers);
+		} else {
+			return Channels.newChannel(in);
+		}
+	}
+	
+	private void readLine() throws IOException {
+		for(;;) {
+			if(channel == null) {
+				if(fileIndex < files.length) {
+					String file = files[fileIndex];
+					if(file == null || file.equals("-")) {
+						channel = openStream(System.in);
+						scanner.open(channel);
+					} else if(!new File(file).isFile()) {
+						// A pipe, such as a FIFO or /dev/stdin
+						PushbackInputStream in = new PushbackInputStream(new FileInputStream(file), 2);
+						if(isGzip(in)) {
+							channel = openStream(new GZIPInputStream(in, 64 * 1024));
+						} else {
+							channel = openStream(in);
+						}
+						scanner.open(channel);
+					} else {
+						FileChannel fileChannel = new FileInputStream(file).getChannel();
+						if(isGzip(fileChannel)) {
+							// Inflates on the read-ahead thread when there is one.
+							channel = openStream(new GZIPInputStream(Channels.newInputStream(fileChannel), 64 * 1024));
+							scanner.open(channel);
+						} else if(configuration.memoryMapped) {
+							channel = fileChannel;
+							scanner.map(fileChannel);
+						} else {
+							channel = fileChannel;
+							scanner.open(channel);
+						}
+					}
+				} else {
+					throw new EOFException();
+				}
+				fileNumber++;
+				lineNumber = 0;
+			}
+			if(scanner.nextLine()) {
+				lineSeq++;
+				lineNumber++;
+				if(lineNumber > headerLines || (!headerEveryFile && fileNumber > 1)) {
+					return;
+				} else {
+					if(fileNumber == 1) {
+						header[lineNumber - 1] = scanner.decode(configuration.inputEncoding);
+					}
+				}
+			} else {
+				if(files[fileIndex] != null && !files[fileIndex].equals("-")) {
+					channel.close();
+				}
+				channel = null;  // Force to open next file
+				fileIndex++;
+			}
+		}
+	}
+	
+	private TextLine readTextLine() {
+		TextLine textLine = new TextLine();
+		textLine.seq = lineSeq;
+		if(configuration.byteOrder) {
+			// All keys are plain text keys in byte order. (See Configuration.normalize)
+			textLine.bytes = scanner.copy();
+			if(configuration.utf8 && !ByteLine.isWellFormedUtf8(textLine.bytes)) {
+				// As decoding and encoding the line would write it
+				textLine.bytes = scanner.decode(configuration.inputEncoding).getBytes(configuration.outputEncoding);
+			}
+		} else {
+			textLine.line = scanner.decode(configuration.inputEncoding);
+		}
+		return textLine;
+	}
+	
+	private TextLine read() throws IOException {
+		if(executor != null) {
+			return readParallel();
+		}
+		readLine();
+		TextLine textLine = readTextLine();
+		parser.parse(textLine, fileNumber, lineNumber);
+		return textLine;
+	}
+	
+	private void submitBatch() throws IOException {
+		// Reads the next segment of lines here, and leaves the key parsing to a worker.
+		final TextLine[] textLines = new TextLine[BATCH_SIZE];
+		final int[] fileNumbers = new int[BATCH_SIZE];
+		final int[] lineNumbers = new int[BATCH_SIZE];
+		int n = 0;
+		try {
+			for(; n < BATCH_SIZE; n++) {
+				readLine();
+				textLines[n] = readTextLine();
+				fileNumbers[n] = fileNumber;
+				lineNumbers[n] = lineNumber;
+			}
+		} catch(EOFException e) {
+			inputExhausted = true;
+		}
+		if(n == 0) {
+			return;
+		}
+		final int count = n;
+		batches.add(executor.submit(new Callable<TextLine[]>() {
+			@Override
+			public TextLine[] call() throws Exception {
+				TextLineParser parser = parsers.take();
+				try {
+					for(int i = 0; i < count; i++) {
+						parser.parse(textLines[i], fileNumbers[i], lineNumbers[i]);
+					}
+				} finally {
+					parsers.put(parser);
+				}
+				return (count == textLines.length)? textLines: Arrays.copyOf(textLines, count);
+			}
+		}));
+	}
+	
+	private TextLine readParallel() throws IOException {
+		while(batch == null || batchIndex == batch.length) {
+			try {
+				while(!inputExhausted && batches.size() < maxBatches) {
+					submitBatch();
+				}
+			} catch(IOException | RuntimeException e) {
+				executor.shutdownNow();
+				throw e;
+			}
+			Future<TextLine[]> future = batches.poll();
+			if(future == null) {
+				executor.shutdown();
+				throw new EOFException();
+			}
+			try {
+				batch = future.get();
+				batchIndex = 0;
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				executor.shutdownNow();
+				Throwable cause = e.getCause();
+				if(cause instanceof RuntimeException) {
+					throw (RuntimeException)cause;
+				}
+				throw new IOException(cause);
+			}
+		}
+		TextLine textLine = batch[batchIndex];
+		batch[batchIndex++] = null;
+		return textLine;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(this.textLine != null)
+			return true;
+		try {
+			this.textLine = read();
+			return true;
+		} catch (EOFException e) {
+			return false;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public TextLine next() {
+		if(this.textLine != null) {
+			TextLine textLine = this.textLine;
+			this.textLine = null;
+			return textLine;
+		} else {
+			try {
+				TextLine textLine = read();
+				return textLine;
+			} catch (EOFException e) {
+				throw new NoSuchElementException("EOF");
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+	
+	void setParallel(int numberOfParallel) throws IOException {
+		// Lines are still read and numbered in order here, so seq stays deterministic.
+		executor = Executors.newFixedThreadPool(numberOfParallel, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Sort parser");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		parsers = new ArrayBlockingQueue<TextLineParser>(numberOfParallel);
+		parsers.add(parser);
+		for(int i = 1; i < numberOfParallel; i++) {
+			parsers.add(new TextLineParser(parser));
+		}
+		batches = new ArrayDeque<Future<TextLine[]>>();
+		maxBatches = numberOfParallel * 2;
+	}
+	
+	void setFile(String file) {
+		files = new String[] {file};
+		fileIndex = 0;
+	}
+	
+	ExternalTextFileIterator(Configuration configuration) throws IOException {
+		this.configuration = configuration;
+		if(configuration.inputFileNames == null) {
+			files = new String[] {null};
+		} else {
+			files = configuration.inputFileNames;
+		}
+		if(configuration.headerLines > 0) {
+			headerLines = configuration.headerLines;
+			header = new String[headerLines];
+			headerEveryFile = configuration.headerEveryFile;
+		}
+		
+		if(configuration.csv) {
+			scanner = new LineScanner(configuration.zeroTerminated, configuration.recordLength, configuration.defaultFieldSeparator? ',': configuration.fieldSeparator);
+		} else {
+			scanner = new LineScanner(configuration.zeroTerminated, configuration.recordLength);
+		}
+		parser = new TextLineParser(configuration);
+	}
 }
\ No newline at end of file
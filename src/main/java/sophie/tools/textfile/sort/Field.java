@@ -1,15 +1,22 @@
-package sophie.tools.textfile.sort;
-
-class Field {
-	short start;
-	short limit;
-	String text;
-	short signedMagnitude;
-	byte[] integralPart;
-	byte[] fractionalPart;
-	//short SIsuffix; // 0: none, 1: k or K, 2: M, 3: G, 4: T, 5: P, 6: E, 7: Z, 8Y
-	double realNumber;
-	short month;
-	byte[] digest;
-	String version;
+package sophie.tools.textfile.sort;
+
+class Field {
+	static final int MAX_PACKED_DIGITS = 18;
+	short start;
+	short limit;
+	String text;
+	byte[] collationKey;	// of a text key when there is a collation locale
+	short signedMagnitude;
+	byte[] integralPart;	// null when the number is packed in mantissa and scale
+	byte[] fractionalPart;
+	long mantissa;	// all digits of a packed number
+	short scale;	// digits of mantissa after the decimal point, -1 for no digits at all
+	//short SIsuffix; // 0: none, 1: k or K, 2: M, 3: G, 4: T, 5: P, 6: E, 7: Z, 8Y
+	double realNumber;
+	short month;
+	long randomHigh;	// the hash of a random key
+	long randomLow;
+	String version;
+	int[] versionTokens;	// the version as TextLineParser.takeVersion tokenized it
+	int versionSuffix;	// index in versionTokens where the tokens of the suffix start
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package sophie.tools.textfile.sort;
+
+class FieldSplitter {
+	// Splits a line into fields as start and limit pairs in a reused array.
+	// Splitting stops at the last field a key refers to.
+	int[] indexes;
+	int count;	// the number of fields in indexes
+	int maxFields;
+	boolean defaultFieldSeparator;
+	char fieldSeparator;
+	boolean wholeLine;	// a fixed length record without -t is one field
+
+	void split(CharSequence line) {
+		final int length = line.length();
+		final int[] indexes = this.indexes;
+		if(wholeLine) {
+			indexes[0] = 0;
+			indexes[1] = length;
+			count = 1;
+			return;
+		}
+		int n = 0;
+		int start = 0;
+		if(defaultFieldSeparator) {
+			for(int i = 0; i < length;) {
+				for(; i < length && Character.isWhitespace(line.charAt(i)); i++) {
+				}
+				for(; i < length && !Character.isWhitespace(line.charAt(i)); i++) {
+				}
+				if(i < length) {
+					indexes[n * 2] = start;
+					indexes[n * 2 + 1] = i;
+					start = i;
+					if(++n == maxFields) {
+						count = n;
+						return;
+					}
+				}
+			}
+		} else {
+			final char separator = fieldSeparator;
+			for(int i = 0; i < length; i++) {
+				if(line.charAt(i) == separator) {
+					indexes[n * 2] = start;
+					indexes[n * 2 + 1] = i;
+					start = i + 1;
+					if(++n == maxFields) {
+						count = n;
+						return;
+					}
+				}
+			}
+		}
+		indexes[n * 2] = start;
+		indexes[n * 2 + 1] = length;
+		count = n + 1;
+	}
+
+	FieldSplitter(Configuration configuration) {
+		this(configuration, configuration.keyFields.length);
+	}
+
+	FieldSplitter(Configuration configuration, int keyCount) {
+		// Splits only as far as the first keyCount keys need.
+		defaultFieldSeparator = configuration.defaultFieldSeparator;
+		fieldSeparator = configuration.fieldSeparator;
+		wholeLine = configuration.recordLength > 0 && defaultFieldSeparator;
+		maxFields = 1;
+		for(int i = 0; i < keyCount; i++) {
+			KeyField keyField = configuration.keyFields[i];
+			if(keyField.startField != Integer.MAX_VALUE) {
+				maxFields = Math.max(maxFields, keyField.startField);
+			}
+			if(keyField.endField != Integer.MAX_VALUE) {
+				maxFields = Math.max(maxFields, keyField.endField);
+			}
+		}
+		indexes = new int[maxFields * 2];
+	}
+}
\ No newline at end of file
@@ -1,5 +1,5 @@
-package sophie.tools.textfile.sort;
-
-public enum IgnoreKind {
-	NoDictionary, NoPrinting
+package sophie.tools.textfile.sort;
+
+public enum IgnoreKind {
+	NoDictionary, NoPrinting
 }
\ No newline at end of file
@@ -1,109 +1,187 @@
-package sophie.tools.textfile.sort;
-
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.Iterator;
-import java.util.zip.GZIPOutputStream;
-
-import org.geirove.exmeso.ExternalMergeSort;
-
-class InternalSerializer implements ExternalMergeSort.Serializer<TextLine> {
-	Configuration configuration;
-	KeyField[] keyFields;
-	boolean stable;
-
-	@Override
-	public Iterator<TextLine> readValues(InputStream in) throws IOException {
-		return new InternalTextFileIterator(configuration, in);
-	}
-
-	@Override
-	public void writeValues(Iterator<TextLine> lines, OutputStream out) throws IOException {
-		GZIPOutputStream gzipOut = null;
-		if(configuration.compressProgram != null) {
-			 out = gzipOut = new GZIPOutputStream(out);
-		}
-		DataOutputStream dataOut = new DataOutputStream(out);
-		while(lines.hasNext()) {
-			TextLine textLine = lines.next();
-			if(stable) {
-				long seq = textLine.seq;
-				if((seq & 0x7fff_ffff_8000_0000L) == 0) {
-					// < Integer.MAX_VALUE
-					dataOut.writeInt((int)seq);
-				} else {
-					// >= Integer.MAX_VALUE
-					dataOut.writeLong(seq | 0x8000_0000_0000_0000L /* long mark*/ );
-				}
-			}
-			for(int i = 0; i < keyFields.length; i++) {
-				Field field = textLine.fields[i];
-				switch(keyFields[i].sortKind) {
-				case Text:
-					dataOut.writeShort(field.start);
-					dataOut.writeShort(field.limit);
-					if(field.text != null) {
-						dataOut.writeBoolean(true);
-						dataOut.writeUTF(field.text);
-					} else {
-						dataOut.writeBoolean(false);
-					}
-					break;
-				case GeneralNumeric:
-					dataOut.writeShort(field.signedMagnitude);
-					dataOut.writeDouble(field.realNumber);
-					break;
-				case HumanNumeric:
-					dataOut.writeShort(field.signedMagnitude);
-					dataOut.writeInt(field.integralPart.length);
-					dataOut.write(field.integralPart, 0, field.integralPart.length);
-					dataOut.writeInt(field.fractionalPart.length);
-					dataOut.write(field.fractionalPart, 0, field.fractionalPart.length);
-					break;
-				case Numeric:
-					dataOut.writeShort(field.signedMagnitude);
-					dataOut.writeInt(field.integralPart.length);
-					dataOut.write(field.integralPart, 0, field.integralPart.length);
-					dataOut.writeInt(field.fractionalPart.length);
-					dataOut.write(field.fractionalPart, 0, field.fractionalPart.length);
-					break;
-				case Month:
-					dataOut.writeShort(field.month);
-					break;
-				case Random:
-					dataOut.writeInt(field.digest.length);
-					dataOut.write(field.digest, 0, field.digest.length);
-					if(Sort.GNU_SORT_COMPATIBLE) {
-						dataOut.writeShort(field.start);
-						dataOut.writeShort(field.limit);
-						if(field.text != null) {
-							dataOut.writeBoolean(true);
-							dataOut.writeUTF(field.text);
-						} else {
-							dataOut.writeBoolean(false);
-						}
-					}
-					break;
-				case Version:
-					dataOut.writeUTF(field.version);
-					break;
-				default:
-					throw new IllegalStateException("Unknown SortKind");
-				}
-			}
-			dataOut.writeUTF(textLine.line);
-		}
-		dataOut.flush();
-		if(gzipOut != null) {
-			gzipOut.finish();
-		}
-	}
-	
-	InternalSerializer(Configuration configuration, boolean stable) {
-		this.configuration = configuration;
-		this.keyFields = configuration.keyFields;
-		this.stable = stable;
-	}
+package sophie.tools.textfile.sort;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
+
+import org.geirove.exmeso.ExternalMergeSort;
+
+class InternalSerializer implements ExternalMergeSort.Serializer<TextLine> {
+	Configuration configuration;
+	KeyField[] keyFields;
+	boolean stable;
+	boolean byteOrder;
+	boolean normalizedKeys;
+	boolean collated;	// lines may carry the collation key of the whole line
+
+	@Override
+	public Iterator<TextLine> readValues(InputStream in) throws IOException {
+		return new InternalTextFileIterator(configuration, in);
+	}
+
+	private static void writeNumber(DataOutputStream dataOut, Field field) throws IOException {
+		if(field.integralPart == null) {
+			dataOut.writeShort(field.scale);
+			dataOut.writeLong(field.mantissa);
+		} else {
+			dataOut.writeShort(Short.MIN_VALUE);	// digit arrays follow
+			dataOut.writeInt(field.integralPart.length);
+			dataOut.write(field.integralPart, 0, field.integralPart.length);
+			dataOut.writeInt(field.fractionalPart.length);
+			dataOut.write(field.fractionalPart, 0, field.fractionalPart.length);
+		}
+	}
+
+	private static void writeVarInt(DataOutputStream dataOut, int value) throws IOException {
+		// 7 bits a byte from the low bits, with the high bit set on all but the last byte.
+		for(; (value & ~0x7f) != 0; value >>>= 7) {
+			dataOut.writeByte((value & 0x7f) | 0x80);
+		}
+		dataOut.writeByte(value);
+	}
+
+	private static void writeBytes(DataOutputStream dataOut, byte[] bytes) throws IOException {
+		if(bytes == null) {
+			writeVarInt(dataOut, 0);
+		} else {
+			writeVarInt(dataOut, bytes.length + 1);
+			dataOut.write(bytes);
+		}
+	}
+
+	void writeValue(DataOutputStream dataOut, TextLine textLine) throws IOException {
+		if(stable) {
+			long seq = textLine.seq;
+			if((seq & 0x7fff_ffff_8000_0000L) == 0) {
+				// < Integer.MAX_VALUE
+				dataOut.writeInt((int)seq);
+			} else {
+				// >= Integer.MAX_VALUE
+				dataOut.writeLong(seq | 0x8000_0000_0000_0000L /* long mark*/ );
+			}
+		}
+		if(normalizedKeys) {
+			writeVarInt(dataOut, textLine.key.length);
+			dataOut.write(textLine.key);
+		} else {
+			dataOut.writeLong(textLine.prefix);
+		}
+		for(int i = 0; i < keyFields.length && !normalizedKeys; i += 8) {
+			// Keys not materialized yet are left out; a bit per key tells which are here.
+			int present = 0;
+			for(int j = i; j < keyFields.length && j < i + 8; j++) {
+				if(textLine.fields[j] != null) {
+					present |= 1 << (j - i);
+				}
+			}
+			dataOut.writeByte(present);
+		}
+		for(int i = 0; i < keyFields.length && !normalizedKeys; i++) {
+			Field field = textLine.fields[i];
+			if(field == null) {
+				continue;
+			}
+			switch(keyFields[i].sortKind) {
+			case Text:
+				dataOut.writeShort(field.start);
+				dataOut.writeShort(field.limit);
+				if(field.text != null) {
+					dataOut.writeBoolean(true);
+					dataOut.writeUTF(field.text);
+				} else {
+					dataOut.writeBoolean(false);
+				}
+				writeBytes(dataOut, field.collationKey);
+				break;
+			case GeneralNumeric:
+				dataOut.writeShort(field.signedMagnitude);
+				dataOut.writeDouble(field.realNumber);
+				break;
+			case HumanNumeric:
+				dataOut.writeShort(field.signedMagnitude);
+				writeNumber(dataOut, field);
+				break;
+			case Numeric:
+				dataOut.writeShort(field.signedMagnitude);
+				writeNumber(dataOut, field);
+				break;
+			case Month:
+				dataOut.writeShort(field.month);
+				break;
+			case Random:
+				dataOut.writeLong(field.randomHigh);
+				dataOut.writeLong(field.randomLow);
+				if(Sort.GNU_SORT_COMPATIBLE) {
+					dataOut.writeShort(field.start);
+					dataOut.writeShort(field.limit);
+					if(field.text != null) {
+						dataOut.writeBoolean(true);
+						dataOut.writeUTF(field.text);
+					} else {
+						dataOut.writeBoolean(false);
+					}
+				}
+				break;
+			case Version:
+				dataOut.writeUTF(field.version);
+				writeVarInt(dataOut, field.versionTokens.length);
+				writeVarInt(dataOut, field.versionSuffix);
+				for(int token: field.versionTokens) {
+					writeVarInt(dataOut, token + 1);	// ~ is -1
+				}
+				break;
+			default:
+				throw new IllegalStateException("Unknown SortKind");
+			}
+		}
+		if(collated) {
+			writeBytes(dataOut, textLine.collationKey);
+		}
+		if(byteOrder) {
+			dataOut.writeInt(textLine.bytes.length);
+			dataOut.write(textLine.bytes);
+		} else {
+			dataOut.writeUTF(textLine.line);
+		}
+	}
+
+	@Override
+	public void writeValues(Iterator<TextLine> lines, OutputStream out) throws IOException {
+		GZIPOutputStream gzipOut = null;
+		if(configuration.compressProgram != null) {
+			 out = gzipOut = new GZIPOutputStream(out);
+		}
+		DataOutputStream dataOut = new DataOutputStream(out);
+		while(lines.hasNext()) {
+			writeValue(dataOut, lines.next());
+		}
+		dataOut.flush();
+		if(gzipOut != null) {
+			gzipOut.finish();
+		}
+	}
+
+	void writeValues(PackedChunk chunk, OutputStream out) throws IOException {
+		// The records are already in the form writeValue gives them.
+		GZIPOutputStream gzipOut = null;
+		if(configuration.compressProgram != null) {
+			 out = gzipOut = new GZIPOutputStream(out);
+		}
+		chunk.write(out);
+		if(gzipOut != null) {
+			gzipOut.finish();
+		}
+	}
+	
+	InternalSerializer(Configuration configuration, boolean stable) {
+		this.configuration = configuration;
+		this.keyFields = configuration.keyFields;
+		this.stable = stable;
+		this.byteOrder = configuration.byteOrder;
+		this.normalizedKeys = configuration.normalizedKeys;
+		this.collated = configuration.textLocale != null && !byteOrder;
+	}
 }
\ No newline at end of file
@@ -1,161 +1,214 @@
-package sophie.tools.textfile.sort;
-
-import java.io.DataInputStream;
-import java.io.EOFException;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
-import java.util.zip.GZIPInputStream;
-
-class InternalTextFileIterator implements Iterator<TextLine> {
-	KeyField[] keyFields;
-	boolean stable;
-	DataInputStream dataIn;
-	TextLine textLine;
-	GZIPInputStream gzipIn;
-	
-	private TextLine read() throws IOException {
-		TextLine textLine = new TextLine();
-		if(stable) {
-			int n = dataIn.readInt();
-			if((n & 0x8000_0000) == 0) { // <= Integer.MAX_VALUE
-				textLine.seq = n;
-			} else {
-				// > Integer.MAX_VALUE
-				int high = n & 0x7fff_ffff; // high 32 bits (clear long mark)
-				int low = dataIn.readInt(); // low 32 bits
-				textLine.seq = ((long)high << 32) | ((long)low & 0xffff_ffffL);
-			}
-		}
-		if(keyFields.length != 0) {
-			textLine.fields = new Field[keyFields.length];
-			for(int i = 0; i < keyFields.length; i++) {
-				Field field = textLine.fields[i] = new Field();
-				switch(keyFields[i].sortKind) {
-				case Text:
-					field.start = dataIn.readShort();
-					field.limit = dataIn.readShort();
-					if(dataIn.readBoolean()) {
-						field.text = dataIn.readUTF();
-					} else {
-						field.text = null;
-					}
-					break;
-				case GeneralNumeric:
-					field.signedMagnitude = dataIn.readShort();
-					field.realNumber = dataIn.readDouble();
-					break;
-				case HumanNumeric:
-					{
-						field.signedMagnitude = dataIn.readShort();
-						int length = dataIn.readInt();
-						field.integralPart = new byte[length];
-						dataIn.read(field.integralPart, 0, length);
-						length = dataIn.readInt();
-						field.fractionalPart = new byte[length];
-						dataIn.read(field.fractionalPart, 0, length);
-					}
-					break;
-				case Numeric:
-					{
-						field.signedMagnitude = dataIn.readShort();
-						int length = dataIn.readInt();
-						field.integralPart = new byte[length];
-						dataIn.read(field.integralPart, 0, length);
-						length = dataIn.readInt();
-						field.fractionalPart = new byte[length];
-						dataIn.read(field.fractionalPart, 0, length);
-					}
-					break;
-				case Month:
-					field.month = dataIn.readShort();
-					break;
-				case Random:
-					int length = dataIn.readInt();
-					field.digest = new byte[length];
-					dataIn.read(field.digest, 0, length);
-					if(Sort.GNU_SORT_COMPATIBLE) {
-						field.start = dataIn.readShort();
-						field.limit = dataIn.readShort();
-						if(dataIn.readBoolean()) {
-							field.text = dataIn.readUTF();
-						} else {
-							field.text = null;
-						}
-					}
-					break;
-				case Version:
-					field.version = dataIn.readUTF();
-					break;
-				default:
-					throw new IllegalStateException("Unknown SortKind");
-				}
-			}
-		}
-		textLine.line = dataIn.readUTF();
-		return textLine;
-	}
-
-	@Override
-	public boolean hasNext() {
-		if(this.textLine != null)
-			return true;
-		try {
-			this.textLine = read();
-			return true;
-		} catch (EOFException e) {
-			if(gzipIn != null) {
-				try {
-					gzipIn.close();
-					gzipIn = null;
-				} catch (IOException e1) {
-					throw new RuntimeException(e1);
-				}
-			}
-			return false;
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	@Override
-	public TextLine next() {
-		if(this.textLine != null) {
-			TextLine textLine = this.textLine;
-			this.textLine = null;
-			return textLine;
-		} else {
-			try {
-				TextLine textLine = read();
-				return textLine;
-			} catch (EOFException e) {
-				if(gzipIn != null) {
-					try {
-						gzipIn.close();
-						gzipIn = null;
-					} catch (IOException e1) {
-						throw new RuntimeException(e1);
-					}
-				}
-				throw new NoSuchElementException("EOF");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
-		}
-	}
-
-	@Override
-	public void remove() {
-		throw new UnsupportedOperationException();
-	}
-	
-	InternalTextFileIterator(Configuration configuration, InputStream in) throws IOException {
-		this.keyFields = configuration.keyFields;
-		this.stable = configuration.stable;
-		if(configuration.compressProgram != null) {
-			in = new GZIPInputStream(in);
-		}
-		dataIn = new DataInputStream(in);
-	}
+package sophie.tools.textfile.sort;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+class InternalTextFileIterator implements Iterator<TextLine> {
+	KeyField[] keyFields;
+	boolean stable;
+	boolean byteOrder;
+	boolean normalizedKeys;
+	boolean collated;
+	DataInputStream dataIn;
+	TextLine textLine;
+	GZIPInputStream gzipIn;
+	byte[] presence;
+	
+	private void readNumber(Field field) throws IOException {
+		short scale = dataIn.readShort();
+		if(scale != Short.MIN_VALUE) {
+			field.scale = scale;
+			field.mantissa = dataIn.readLong();
+		} else {
+			field.integralPart = new byte[dataIn.readInt()];
+			dataIn.readFully(field.integralPart);
+			field.fractionalPart = new byte[dataIn.readInt()];
+			dataIn.readFully(field.fractionalPart);
+		}
+	}
+	
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for(int shift = 0;; shift += 7) {
+			int b = dataIn.readByte();
+			value |= (b & 0x7f) << shift;
+			if(b >= 0) {
+				return value;
+			}
+		}
+	}
+	
+	private byte[] readBytes() throws IOException {
+		int length = readVarInt();
+		if(length == 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length - 1];
+		dataIn.readFully(bytes);
+		return bytes;
+	}
+	
+	private TextLine read() throws IOException {
+		TextLine textLine = new TextLine();
+		if(stable) {
+			int n = dataIn.readInt();
+			if((n & 0x8000_0000) == 0) { // <= Integer.MAX_VALUE
+				textLine.seq = n;
+			} else {
+				// > Integer.MAX_VALUE
+				int high = n & 0x7fff_ffff; // high 32 bits (clear long mark)
+				int low = dataIn.readInt(); // low 32 bits
+				textLine.seq = ((long)high << 32) | ((long)low & 0xffff_ffffL);
+			}
+		}
+		if(normalizedKeys) {
+			textLine.key = new byte[readVarInt()];
+			dataIn.readFully(textLine.key);
+		} else {
+			textLine.prefix = dataIn.readLong();
+		}
+		if(!normalizedKeys && keyFields.length != 0) {
+			textLine.fields = new Field[keyFields.length];
+			for(int i = 0; i < keyFields.length; i += 8) {
+				presence[i >> 3] = dataIn.readByte();
+			}
+			for(int i = 0; i < keyFields.length; i++) {
+				if((presence[i >> 3] & (1 << (i & 7))) == 0) {
+					continue;	// Materialized when a comparison reaches it
+				}
+				Field field = textLine.fields[i] = new Field();
+				switch(keyFields[i].sortKind) {
+				case Text:
+					field.start = dataIn.readShort();
+					field.limit = dataIn.readShort();
+					if(dataIn.readBoolean()) {
+						field.text = dataIn.readUTF();
+					} else {
+						field.text = null;
+					}
+					field.collationKey = readBytes();
+					break;
+				case GeneralNumeric:
+					field.signedMagnitude = dataIn.readShort();
+					field.realNumber = dataIn.readDouble();
+					break;
+				case HumanNumeric:
+					field.signedMagnitude = dataIn.readShort();
+					readNumber(field);
+					break;
+				case Numeric:
+					field.signedMagnitude = dataIn.readShort();
+					readNumber(field);
+					break;
+				case Month:
+					field.month = dataIn.readShort();
+					break;
+				case Random:
+					field.randomHigh = dataIn.readLong();
+					field.randomLow = dataIn.readLong();
+					if(Sort.GNU_SORT_COMPATIBLE) {
+						field.start = dataIn.readShort();
+						field.limit = dataIn.readShort();
+						if(dataIn.readBoolean()) {
+							field.text = dataIn.readUTF();
+						} else {
+							field.text = null;
+						}
+					}
+					break;
+				case Version:
+					field.version = dataIn.readUTF();
+					field.versionTokens = new int[readVarInt()];
+					field.versionSuffix = readVarInt();
+					for(int k = 0; k < field.versionTokens.length; k++) {
+						field.versionTokens[k] = readVarInt() - 1;
+					}
+					break;
+				default:
+					throw new IllegalStateException("Unknown SortKind");
+				}
+			}
+		}
+		if(collated) {
+			textLine.collationKey = readBytes();
+		}
+		if(byteOrder) {
+			textLine.bytes = new byte[dataIn.readInt()];
+			dataIn.readFully(textLine.bytes);
+		} else {
+			textLine.line = dataIn.readUTF();
+		}
+		return textLine;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(this.textLine != null)
+			return true;
+		try {
+			this.textLine = read();
+			return true;
+		} catch (EOFException e) {
+			if(gzipIn != null) {
+				try {
+					gzipIn.close();
+					gzipIn = null;
+				} catch (IOException e1) {
+					throw new RuntimeException(e1);
+				}
+			}
+			return false;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public TextLine next() {
+		if(this.textLine != null) {
+			TextLine textLine = this.textLine;
+			this.textLine = null;
+			return textLine;
+		} else {
+			try {
+				TextLine textLine = read();
+				return textLine;
+			} catch (EOFException e) {
+				if(gzipIn != null) {
+					try {
+						gzipIn.close();
+						gzipIn = null;
+					} catch (IOException e1) {
+						throw new RuntimeException(e1);
+					}
+				}
+				throw new NoSuchElementException("EOF");
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+	
+	InternalTextFileIterator(Configuration configuration, InputStream in) throws IOException {
+		this.keyFields = configuration.keyFields;
+		this.stable = configuration.stable;
+		this.byteOrder = configuration.byteOrder;
+		this.normalizedKeys = configuration.normalizedKeys;
+		this.collated = configuration.textLocale != null && !byteOrder;
+		presence = new byte[(keyFields.length + 7) / 8];
+		if(configuration.compressProgram != null) {
+			in = new GZIPInputStream(in);
+		}
+		dataIn = new DataInputStream(in);
+	}
 }
\ No newline at end of file
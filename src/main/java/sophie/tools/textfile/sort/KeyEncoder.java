@@ -0,0 +1,277 @@
+package sophie.tools.textfile.sort;
+
+import java.text.Collator;
+import java.util.Arrays;
+
+class KeyEncoder {
+	// Encodes all keys of a line into one byte string whose unsigned order is the order
+	// TextLineComparator gives them. (--normalized-keys)
+	// No encoding of a key is a prefix of another encoding of that key, so the keys can be
+	// concatenated, and a reversed key is simply complemented.
+	KeyField[] keyFields;
+	Collator collator;
+	boolean byteOrder;
+	boolean utf8;
+	boolean lastResort;	// the whole line follows the keys
+	boolean reverse;
+	byte[] buffer = new byte[256];
+	int length;
+	int stop = Integer.MAX_VALUE;	// text is encoded up to this length
+
+	private void put(int b) {
+		if(length == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		buffer[length++] = (byte)b;
+	}
+
+	private void putShort(int value) {
+		put((value >> 8) ^ 0x80);	// signed
+		put(value);
+	}
+
+	private void putInt(int value) {
+		put(value >>> 24);	// unsigned
+		put(value >>> 16);
+		put(value >>> 8);
+		put(value);
+	}
+
+	private void putLong(long value) {
+		putInt((int)(value >>> 32));	// unsigned
+		putInt((int)value);
+	}
+
+	private void putEscaped(int b) {
+		// 0 is escaped as 0 1, so that the terminator 0 0 is less than any byte.
+		put(b);
+		if((b & 0xff) == 0) {
+			put(1);
+		}
+	}
+
+	private void putEscaped(byte[] bytes, int start, int limit) {
+		for(int i = start; i < limit && length < stop; i++) {
+			putEscaped(bytes[i]);
+		}
+		put(0);
+		put(0);
+	}
+
+	private void putBytes(byte[] bytes, int start, int limit) {
+		// The bytes of a byteOrder line, in the order of ByteLine.compare
+		if(!utf8) {
+			putEscaped(bytes, start, limit);
+			return;
+		}
+		for(int i = start; i < limit && length < stop; i++) {
+			putEscaped(ByteLine.utf16Order(bytes[i] & 0xff));
+		}
+		put(0);
+		put(0);
+	}
+
+	private void putChars(String text, int start, int limit) {
+		// The order of String.compareTo in 1 byte per ASCII char, 2 or 3 bytes for the others.
+		// Only the terminator has 0 in the first byte of a char.
+		for(int i = start; i < limit && length < stop; i++) {
+			char c = text.charAt(i);
+			if(c < 0x7f) {
+				put(c + 1);
+			} else if(c < 0x4000) {
+				put(0x80 | (c >> 8));
+				put(c);
+			} else {
+				put(0xc0);
+				put(c >> 8);
+				put(c);
+			}
+		}
+		put(0);
+	}
+
+	private void putText(String text) {
+		if(collator != null) {
+			byte[] bytes = collator.getCollationKey(text).toByteArray();
+			putEscaped(bytes, 0, bytes.length);
+		} else {
+			putChars(text, 0, text.length());
+		}
+	}
+
+	private void putNumber(Field field) {
+		// numericCompare: negative numbers first and in reverse order, and an empty number
+		// first among the numbers of its sign. The digits compare as signed bytes there.
+		boolean negative = field.signedMagnitude < 0;
+		put(negative? 0: 1);
+		final int start = length;
+		if(TextLineComparator.isEmptyNumber(field)) {
+			put(0);
+		} else {
+			put(1);
+			byte[] integralPart = TextLineComparator.integralPart(field);
+			putInt(integralPart.length);
+			for(byte b: integralPart) {
+				put(b ^ 0x80);
+			}
+			for(byte b: TextLineComparator.fractionalPart(field)) {
+				putEscaped(b ^ 0x80);
+			}
+			put(0);
+			put(0);
+		}
+		if(negative) {
+			complement(start);
+		}
+	}
+
+	private void putTokens(int[] tokens, int start, int limit) {
+		// tokenCompare reads past the end as 0, so each token that is not 0 is encoded with
+		// the number of 0s before it. After the same 0s, the one with the token wins if it is
+		// positive and loses if it is negative, whatever follows.
+		int zeros = 0;
+		for(int i = start; i < limit; i++) {
+			int token = tokens[i];
+			if(token == 0) {
+				zeros++;
+			} else if(token > 0) {
+				put(3);
+				putInt(~zeros);
+				putInt(token);
+				zeros = 0;
+			} else {
+				put(1);
+				putInt(zeros);
+				putInt(token ^ Integer.MIN_VALUE);
+				zeros = 0;
+			}
+		}
+		put(2);
+	}
+
+	private void putVersion(Field field) {
+		// versionCompare: "", ".", "..", hidden names, other names, and then the tokens.
+		String version = field.version;
+		if(version.length() == 0) {
+			put(0);
+		} else if(version.equals(".")) {
+			put(1);
+		} else if(version.equals("..")) {
+			put(2);
+		} else {
+			put(version.startsWith(".")? 3: 4);
+			putTokens(field.versionTokens, 0, field.versionSuffix);
+			putTokens(field.versionTokens, field.versionSuffix, field.versionTokens.length);
+			putChars(version, 0, version.length());
+		}
+	}
+
+	private void putDouble(double value) {
+		long bits = Double.doubleToLongBits(value);	// in the order of Double.compare
+		putLong((bits < 0)? ~bits: bits ^ Long.MIN_VALUE);
+	}
+
+	private void complement(int start) {
+		for(int i = start; i < length; i++) {
+			buffer[i] = (byte)~buffer[i];
+		}
+	}
+
+	private void putKey(TextLine textLine, int i) {
+		final int start = length;
+		final Field field = textLine.fields[i];
+		switch(keyFields[i].sortKind) {
+		case Text:
+			if(byteOrder) {
+				putBytes(textLine.bytes, field.start, field.limit);
+			} else if(field.collationKey != null) {
+				putEscaped(field.collationKey, 0, field.collationKey.length);
+			} else if(field.text != null) {
+				putChars(field.text, 0, field.text.length());
+			} else {
+				putChars(textLine.line, field.start, field.limit);
+			}
+			break;
+		case GeneralNumeric:
+			putShort(field.signedMagnitude);
+			putDouble(field.realNumber);
+			break;
+		case HumanNumeric:
+			putShort(field.signedMagnitude);
+			putNumber(field);
+			break;
+		case Numeric:
+			putNumber(field);
+			break;
+		case Month:
+			putShort(field.month);
+			break;
+		case Random:
+			putLong(field.randomHigh);
+			putLong(field.randomLow);
+			break;
+		case Version:
+			putVersion(field);
+			break;
+		default:
+			throw new IllegalStateException("Unknown SortKind");
+		}
+		if(keyFields[i].reverse) {
+			complement(start);
+		}
+	}
+
+	private void putLine(TextLine textLine) {
+		final int start = length;
+		if(byteOrder) {
+			putBytes(textLine.bytes, 0, textLine.bytes.length);
+		} else if(textLine.collationKey != null) {
+			putEscaped(textLine.collationKey, 0, textLine.collationKey.length);
+		} else {
+			putText(textLine.line);
+		}
+		if(reverse) {
+			complement(start);
+		}
+	}
+
+	byte[] encode(TextLine textLine) {
+		length = 0;
+		for(int i = 0; i < keyFields.length; i++) {
+			putKey(textLine, i);
+		}
+		if(lastResort) {
+			putLine(textLine);
+		}
+		return Arrays.copyOf(buffer, length);
+	}
+
+	long prefix(TextLine textLine) {
+		// The first 8 bytes of the encoded first key, or of the line when there are no keys.
+		// Lines with different prefixes compare as the prefixes do.
+		length = 0;
+		stop = 8;
+		if(keyFields.length != 0) {
+			putKey(textLine, 0);
+		} else {
+			putLine(textLine);
+		}
+		stop = Integer.MAX_VALUE;
+		long prefix = 0;
+		for(int i = 0; i < 8; i++) {
+			prefix = (prefix << 8) | ((i < length)? buffer[i] & 0xff: 0);
+		}
+		return prefix;
+	}
+
+	KeyEncoder(Configuration configuration) {
+		this.keyFields = configuration.keyFields;
+		this.byteOrder = configuration.byteOrder;
+		this.utf8 = configuration.utf8;
+		this.reverse = configuration.reverse;
+		lastResort = keyFields.length == 0 || !(configuration.stable || configuration.unique);
+		if(configuration.textLocale != null) {
+			collator = Collator.getInstance(configuration.textLocale);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+package sophie.tools.textfile.sort;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+class LineDecoder {
+	// Decodes lines straight out of the read buffer into one reused char array.
+	// ISO-8859-1, ASCII runs and well-formed UTF-8 are decoded by hand;
+	// everything else goes through one reused CharsetDecoder.
+	Charset charset;
+	CharsetDecoder decoder;
+	boolean latin1;
+	boolean asciiCompatible;
+	boolean utf8;
+	char[] chars = new char[256];
+	CharBuffer charBuffer = CharBuffer.wrap(chars);
+	ByteBuffer buffer;	// the buffer source is a duplicate of
+	ByteBuffer source;
+
+	private void ensureCapacity(int capacity) {
+		if(chars.length < capacity) {
+			chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+			charBuffer = CharBuffer.wrap(chars);
+		}
+	}
+
+	private int decodeSlow(int i, int limit, int n) {
+		if(source == null) {
+			source = buffer.duplicate();
+		}
+		ensureCapacity(n + (int)Math.ceil((limit - i) * (double)decoder.maxCharsPerByte()));
+		source.limit(limit);
+		source.position(i);
+		charBuffer.clear();
+		charBuffer.position(n);
+		decoder.reset();
+		decoder.decode(source, charBuffer, true);
+		decoder.flush(charBuffer);
+		return charBuffer.position();
+	}
+
+	String decode(ByteBuffer buffer, int start, int limit) {
+		if(this.buffer != buffer) {
+			this.buffer = buffer;
+			source = null;
+		}
+		ensureCapacity(limit - start);
+		final char[] chars = this.chars;
+		int n = 0;
+		int i = start;
+		if(latin1) {
+			for(; i < limit; i++) {
+				chars[n++] = (char)(buffer.get(i) & 0xff);
+			}
+		} else if(asciiCompatible) {
+			while(i < limit) {
+				int b = buffer.get(i);
+				if(b >= 0) {
+					chars[n++] = (char)b;
+					i++;
+					continue;
+				}
+				if(!utf8) {
+					break;
+				}
+				b &= 0xff;
+				if(b >= 0xc2 && b <= 0xdf && i + 1 < limit) {
+					int b1 = buffer.get(i + 1);
+					if((b1 & 0xc0) == 0x80) {
+						chars[n++] = (char)(((b & 0x1f) << 6) | (b1 & 0x3f));
+						i += 2;
+						continue;
+					}
+				} else if(b >= 0xe0 && b <= 0xef && i + 2 < limit) {
+					int b1 = buffer.get(i + 1) & 0xff;
+					int b2 = buffer.get(i + 2);
+					if((b1 & 0xc0) == 0x80 && (b2 & 0xc0) == 0x80
+							&& (b != 0xe0 || b1 >= 0xa0) && (b != 0xed || b1 < 0xa0)) {
+						chars[n++] = (char)(((b & 0x0f) << 12) | ((b1 & 0x3f) << 6) | (b2 & 0x3f));
+						i += 3;
+						continue;
+					}
+				} else if(b >= 0xf0 && b <= 0xf4 && i + 3 < limit) {
+					int b1 = buffer.get(i + 1) & 0xff;
+					int b2 = buffer.get(i + 2);
+					int b3 = buffer.get(i + 3);
+					if((b1 & 0xc0) == 0x80 && (b2 & 0xc0) == 0x80 && (b3 & 0xc0) == 0x80
+							&& (b != 0xf0 || b1 >= 0x90) && (b != 0xf4 || b1 < 0x90)) {
+						int codePoint = ((b & 0x07) << 18) | ((b1 & 0x3f) << 12) | ((b2 & 0x3f) << 6) | (b3 & 0x3f);
+						chars[n++] = Character.highSurrogate(codePoint);
+						chars[n++] = Character.lowSurrogate(codePoint);
+						i += 4;
+						continue;
+					}
+				}
+				break;	// Malformed or truncated. Let the decoder replace it.
+			}
+		}
+		if(i < limit) {
+			n = decodeSlow(i, limit, n);
+		}
+		return new String(this.chars, 0, n);
+	}
+
+	LineDecoder(Charset charset) {
+		this.charset = charset;
+		decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+		utf8 = charset.equals(StandardCharsets.UTF_8);
+		asciiCompatible = utf8 || charset.equals(StandardCharsets.US_ASCII);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,289 @@
+package sophie.tools.textfile.sort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+class LineScanner {
+	static final int BLOCK_SIZE = 1024 * 1024;
+	static final int WINDOW_SIZE = 64 * 1024 * 1024;
+	// States of a CSV record scan
+	static final int FIELD_START = 0;
+	static final int UNQUOTED = 1;
+	static final int QUOTED = 2;
+	static final int QUOTE_IN_QUOTED = 3;	// a quote that closes the field or is doubled
+	static final int AFTER_QUOTED = 4;
+	ReadableByteChannel channel;
+	byte[] block;
+	ByteBuffer buffer;	// wraps block, or maps a window of the file
+	ByteBuffer view;	// duplicate of a mapped window used to copy lines out
+	LineDecoder decoder;
+	boolean mapped;
+	long fileSize;
+	long windowStart;
+	int position;	// start of the bytes not yet returned as a line
+	int limit;		// end of the valid bytes in buffer
+	boolean eof;
+	boolean zeroTerminated;
+	int recordLength;	// fixed record length in bytes, 0 means lines are terminated
+	boolean csv;	// line terminators in quoted fields belong to the record
+	int csvDelimiter;	// -1 for a delimiter that is not a single byte
+	int csvState;
+	boolean afterCr;	// the previous line was terminated by '\r'
+	boolean hasCr = false;
+	boolean hasNl = false;
+	boolean hasCrLf = false;
+	int lineStart;
+	int lineLimit;
+
+	void open(ReadableByteChannel channel) {
+		this.channel = channel;
+		mapped = false;
+		buffer = ByteBuffer.wrap(block);
+		view = null;
+		position = 0;
+		limit = 0;
+		eof = false;
+		afterCr = false;
+	}
+
+	void map(FileChannel channel) throws IOException {
+		this.channel = channel;
+		mapped = true;
+		fileSize = channel.size();
+		windowStart = 0;
+		position = 0;
+		limit = 0;
+		eof = false;
+		afterCr = false;
+		buffer = ByteBuffer.allocate(0);
+		view = null;
+	}
+
+	private boolean fill() throws IOException {
+		if(eof) {
+			return false;
+		}
+		if(mapped) {
+			return remap();
+		}
+		if(position > 0) {
+			System.arraycopy(block, position, block, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if(limit == block.length) {
+			byte[] newBlock = new byte[block.length * 2];
+			System.arraycopy(block, 0, newBlock, 0, limit);
+			block = newBlock;
+			buffer = ByteBuffer.wrap(block);
+		}
+		ByteBuffer target = ByteBuffer.wrap(block, limit, block.length - limit);
+		int n;
+		while((n = channel.read(target)) == 0) {
+			// Nothing to do. (A blocking channel returns 0 only for an empty buffer)
+		}
+		if(n < 0) {
+			eof = true;
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+
+	private boolean remap() throws IOException {
+		long start = windowStart + position;
+		if(windowStart + limit >= fileSize) {
+			eof = true;
+			return false;
+		}
+		long size = Math.max(WINDOW_SIZE, 2L * (limit - position));
+		size = Math.min(Math.min(size, fileSize - start), Integer.MAX_VALUE);
+		if(size <= limit - position) {
+			throw new IOException("Line too long to map: " + (limit - position) + " bytes");
+		}
+		buffer = ((FileChannel)channel).map(FileChannel.MapMode.READ_ONLY, start, size);
+		view = buffer.duplicate();
+		windowStart = start;
+		position = 0;
+		limit = (int)size;
+		return true;
+	}
+
+	private int scan(int i) {
+		final int limit = this.limit;
+		if(!mapped) {
+			final byte[] block = this.block;
+			if(zeroTerminated) {
+				for(; i < limit; i++) {
+					if(block[i] == 0) {
+						return i;
+					}
+				}
+			} else {
+				for(; i < limit; i++) {
+					byte c = block[i];
+					if(c == '\n' || c == '\r') {
+						return i;
+					}
+				}
+			}
+		} else {
+			final ByteBuffer buffer = this.buffer;
+			if(zeroTerminated) {
+				for(; i < limit; i++) {
+					if(buffer.get(i) == 0) {
+						return i;
+					}
+				}
+			} else {
+				for(; i < limit; i++) {
+					byte c = buffer.get(i);
+					if(c == '\n' || c == '\r') {
+						return i;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	private int scanCsv(int i) {
+		// Follows the quotes as CsvSplitter does, so that the state survives a refill.
+		final int limit = this.limit;
+		final ByteBuffer buffer = this.buffer;
+		final int delimiter = csvDelimiter;
+		int state = csvState;
+		for(; i < limit; i++) {
+			byte c = buffer.get(i);
+			if(state == QUOTED) {
+				if(c == '"') {
+					state = QUOTE_IN_QUOTED;
+				}
+				continue;
+			}
+			if(state == QUOTE_IN_QUOTED) {
+				if(c == '"') {
+					state = QUOTED;
+					continue;
+				}
+				state = AFTER_QUOTED;
+			} else if(state == FIELD_START) {
+				if(c == '"') {
+					state = QUOTED;
+					continue;
+				}
+				if((c == ' ' || c == '\t') && c != delimiter) {
+					continue;
+				}
+			}
+			if(c == delimiter) {
+				state = FIELD_START;
+			} else if(c == '\n' || c == '\r') {
+				csvState = state;
+				return i;
+			} else if(state == FIELD_START) {
+				state = UNQUOTED;
+			}
+		}
+		csvState = state;
+		return -1;
+	}
+
+	private boolean nextRecord() throws IOException {
+		while(limit - position < recordLength) {
+			if(!fill()) {
+				if(position < limit) {
+					break;	// A short last record
+				}
+				return false;
+			}
+		}
+		lineStart = position;
+		lineLimit = Math.min(position + recordLength, limit);
+		position = lineLimit;
+		return true;
+	}
+
+	boolean nextLine() throws IOException {
+		if(recordLength > 0) {
+			return nextRecord();
+		}
+		if(afterCr) {
+			if(position == limit && !fill()) {
+				return false;
+			}
+			afterCr = false;
+			if(buffer.get(position) == '\n') {
+				hasCrLf = true;
+				position++;
+			} else {
+				hasCr = true;
+			}
+		}
+		int i = position;
+		csvState = FIELD_START;
+		for(;;) {
+			int terminator = csv? scanCsv(i): scan(i);
+			if(terminator >= 0) {
+				lineStart = position;
+				lineLimit = terminator;
+				position = terminator + 1;
+				if(!zeroTerminated) {
+					if(buffer.get(terminator) == '\n') {
+						hasNl = true;
+					} else {
+						afterCr = true;
+					}
+				}
+				return true;
+			}
+			int scanned = limit - position;
+			if(!fill()) {
+				break;
+			}
+			i = position + scanned;
+		}
+		if(position < limit) {
+			lineStart = position;
+			lineLimit = limit;
+			position = limit;
+			return true;
+		}
+		return false;
+	}
+
+	String decode(Charset charset) {
+		if(decoder == null || !decoder.charset.equals(charset)) {
+			decoder = new LineDecoder(charset);
+		}
+		return decoder.decode(buffer, lineStart, lineLimit);
+	}
+
+	byte[] copy() {
+		int length = lineLimit - lineStart;
+		byte[] bytes = new byte[length];
+		if(!mapped) {
+			System.arraycopy(block, lineStart, bytes, 0, length);
+		} else {
+			view.position(lineStart);
+			view.get(bytes, 0, length);
+		}
+		return bytes;
+	}
+
+	LineScanner(boolean zeroTerminated, int recordLength) {
+		this.zeroTerminated = zeroTerminated;
+		this.recordLength = recordLength;
+		block = new byte[BLOCK_SIZE];
+	}
+
+	LineScanner(boolean zeroTerminated, int recordLength, char csvDelimiter) {
+		// Reads CSV records, whose quoted fields may have line terminators in them.
+		this(zeroTerminated, recordLength);
+		this.csv = !zeroTerminated && recordLength == 0;
+		this.csvDelimiter = (csvDelimiter < 0x80)? csvDelimiter: -1;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package sophie.tools.textfile.sort;
+
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Map;
+
+class MonthTable {
+	// Looks up upper case month names with the token still in the line.
+	// The table is sized so that every name has a slot of its own.
+	static final int NOT_FOUND = -1;
+	static final int UNKNOWN = -2;	// The token needs String.toUpperCase to be looked up
+	String[] names;
+	short[] months;
+	int mask;
+	BitSet simpleUpperCase;	// chars Character.toUpperCase maps as String.toUpperCase does
+
+	private static int hash(String name) {
+		return name.hashCode() ^ (name.hashCode() >>> 16);
+	}
+
+	private boolean fill(Map<String, Integer> monthMap, int size) {
+		names = new String[size];
+		months = new short[size];
+		mask = size - 1;
+		boolean perfect = true;
+		for(Map.Entry<String, Integer> entry: monthMap.entrySet()) {
+			int slot = hash(entry.getKey()) & mask;
+			if(names[slot] != null) {
+				perfect = false;
+				do {
+					slot = (slot + 1) & mask;
+				} while(names[slot] != null);
+			}
+			names[slot] = entry.getKey();
+			months[slot] = (short)(int)entry.getValue();
+		}
+		return perfect;
+	}
+
+	int lookup(CharSequence line, int start, int limit) {
+		int h = 0;
+		for(int i = start; i < limit; i++) {
+			char c = line.charAt(i);
+			if(!simpleUpperCase.get(c)) {
+				return UNKNOWN;	// e.g. sharp s, which is "SS" in upper case
+			}
+			h = 31 * h + Character.toUpperCase(c);
+		}
+		int slot = (h ^ (h >>> 16)) & mask;
+		for(;;) {
+			String name = names[slot];
+			if(name == null) {
+				return NOT_FOUND;
+			}
+			if(name.length() == limit - start) {
+				int i = 0;
+				for(; i < name.length() && name.charAt(i) == Character.toUpperCase(line.charAt(start + i)); i++) {
+				}
+				if(i == name.length()) {
+					return months[slot];
+				}
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	MonthTable(Map<String, Integer> monthMap) {
+		Locale locale = Locale.getDefault();
+		simpleUpperCase = new BitSet(Character.MAX_VALUE + 1);
+		simpleUpperCase.set('0', '9' + 1);
+		for(int c = 0; c <= Character.MAX_VALUE; c++) {
+			if(Character.isJavaIdentifierPart(c) && !Character.isSurrogate((char)c)) {
+				String upper = String.valueOf((char)c).toUpperCase(locale);
+				if(upper.length() == 1 && upper.charAt(0) == Character.toUpperCase((char)c)) {
+					simpleUpperCase.set(c);
+				}
+			}
+		}
+		if(locale.getLanguage().equals("lt")) {
+			simpleUpperCase.clear('\u0307');	// Dropped after i in Lithuanian
+		}
+		int size = Integer.highestOneBit(Math.max(monthMap.size(), 1) * 4 - 1) << 1;
+		while(!fill(monthMap, size) && size < (1 << 16)) {
+			size <<= 1;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,113 @@
+package sophie.tools.textfile.sort;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+class PackedChunk extends RowSorter {
+	// The lines of a chunk with --normalized-keys, packed one after another into a reused byte
+	// array as InternalSerializer.writeValue writes them. The encoded key in each record is all
+	// the comparison needs, so sorting permutes the rows and no line object is kept.
+	static final int MAX_SIZE = Integer.MAX_VALUE / 2;	// of the records, so that the array can double
+	static final int INDEX_BYTES = 5 * 4;	// the ints kept for each record
+	final Arena arena = new Arena();
+	final DataOutputStream dataOut = new DataOutputStream(arena);
+	InternalSerializer internalSerializer;
+	boolean stable;
+	int count;
+	int[] starts = new int[1024 + 1];	// where each record starts, and where the next one will
+	int[] keyStarts = new int[1024];
+	int[] keyLimits = new int[1024];
+
+	static final class Arena extends OutputStream {
+		// A ByteArrayOutputStream without locking that exposes its bytes.
+		byte[] bytes = new byte[64 * 1024];
+		int length;
+
+		private void ensureCapacity(int more) {
+			if(more > bytes.length - length) {
+				bytes = Arrays.copyOf(bytes, (int)Math.min(Integer.MAX_VALUE - 8, Math.max(bytes.length * 2L, (long)length + more)));
+			}
+		}
+
+		@Override
+		public void write(int b) {
+			ensureCapacity(1);
+			bytes[length++] = (byte)b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			ensureCapacity(len);
+			System.arraycopy(b, off, bytes, length, len);
+			length += len;
+		}
+	}
+
+	void add(TextLine textLine) throws IOException {
+		if(count == keyStarts.length) {
+			starts = Arrays.copyOf(starts, count * 2 + 1);
+			keyStarts = Arrays.copyOf(keyStarts, count * 2);
+			keyLimits = Arrays.copyOf(keyLimits, count * 2);
+		}
+		final int start = arena.length;
+		internalSerializer.writeValue(dataOut, textLine);
+		final byte[] bytes = arena.bytes;
+		int i = start;
+		if(stable) {
+			i += ((bytes[i] & 0x80) != 0)? 8: 4;	// The sequence number is a long when marked
+		}
+		int keyLength = 0;
+		for(int shift = 0;; shift += 7) {
+			int b = bytes[i++];
+			keyLength |= (b & 0x7f) << shift;
+			if((b & 0x80) == 0) {
+				break;
+			}
+		}
+		starts[count] = start;
+		keyStarts[count] = i;
+		keyLimits[count] = i + keyLength;
+		count++;
+		starts[count] = arena.length;
+	}
+
+	long size() {
+		return arena.length + (long)count * INDEX_BYTES;
+	}
+
+	void clear() {
+		arena.length = 0;
+		count = 0;
+	}
+
+	@Override
+	int digit(int row, int depth) {
+		final int i = keyStarts[row] + depth;
+		return (i < keyLimits[row])? (arena.bytes[i] & 0xff) + 1: 0;
+	}
+
+	@Override
+	int compare(int thisRow, int thatRow, int depth) {
+		final byte[] bytes = arena.bytes;
+		return Arrays.compareUnsigned(bytes, keyStarts[thisRow] + depth, keyLimits[thisRow], bytes, keyStarts[thatRow] + depth, keyLimits[thatRow]);
+	}
+
+	void sort() {
+		sortRows(count);
+	}
+
+	void write(OutputStream out) throws IOException {
+		for(int i = 0; i < count; i++) {
+			int row = rows[i];
+			out.write(arena.bytes, starts[row], starts[row + 1] - starts[row]);
+		}
+	}
+
+	PackedChunk(InternalSerializer internalSerializer) {
+		super(64);	// key bytes the radix sort goes into before merge sorting
+		this.internalSerializer = internalSerializer;
+		this.stable = internalSerializer.stable;
+	}
+}
\ No newline at end of file
@@ -1,5 +1,5 @@
-package sophie.tools.textfile.sort;
-
-public enum ProcessKind {
-	Sort, Merge, Check
+package sophie.tools.textfile.sort;
+
+public enum ProcessKind {
+	Sort, Merge, Check
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package sophie.tools.textfile.sort;
+
+class RandomHash {
+	// MurmurHash3 x64 128 over the chars of a key, 4 chars a long, with both halves seeded.
+	// It is not a cryptographic hash; it only needs to scatter keys and keep equal keys together.
+	static final long C1 = 0x87c37b91114253d5L;
+	static final long C2 = 0x4cf5ad432745937fL;
+	final long seed1;
+	final long seed2;
+	long high;	// the hash last computed
+	long low;
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	private static long chars(CharSequence text, int i, int limit) {
+		long k = 0;
+		for(int shift = 0; i < limit; i++, shift += 16) {
+			k |= (long)text.charAt(i) << shift;
+		}
+		return k;
+	}
+
+	void hash(CharSequence text, int start, int limit) {
+		long h1 = seed1;
+		long h2 = seed2;
+		int i = start;
+		for(; i + 8 <= limit; i += 8) {
+			long k1 = chars(text, i, i + 4);
+			long k2 = chars(text, i + 4, i + 8);
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+		if(i + 4 < limit) {
+			long k2 = chars(text, i + 4, limit);
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= C1;
+			h2 ^= k2;
+		}
+		if(i < limit) {
+			long k1 = chars(text, i, Math.min(i + 4, limit));
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+		}
+		long length = (limit - start) * 2L;	// in bytes
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		high = h1;
+		low = h2;
+	}
+
+	RandomHash(long seed1, long seed2) {
+		this.seed1 = seed1;
+		this.seed2 = seed2;
+	}
+
+	RandomHash(byte[] seed) {
+		// The seed bytes are hashed once into the seeds of both halves.
+		StringBuilder builder = new StringBuilder(seed.length);
+		for(byte b: seed) {
+			builder.append((char)(b & 0xff));
+		}
+		RandomHash seeder = new RandomHash(0, 0);
+		seeder.hash(builder, 0, builder.length());
+		seed1 = seeder.high;
+		seed2 = seeder.low;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+package sophie.tools.textfile.sort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+class ReadAheadChannel implements ReadableByteChannel {
+	// Reads an input stream on a thread of its own into a ring of buffers,
+	// so that the producer of the stream and the line parser run at the same time.
+	static final int BUFFER_SIZE = 1024 * 1024;
+	InputStream in;
+	BlockingQueue<Buffer> freeBuffers;
+	BlockingQueue<Buffer> filledBuffers;
+	Buffer buffer;
+	int position;
+	boolean eof;
+	IOException exception;	// of the reader thread, thrown by every read after it
+	boolean open = true;
+	Thread thread;
+
+	static class Buffer {
+		byte[] bytes;
+		int length;	// -1 means end of stream
+		IOException exception;
+
+		Buffer(int size) {
+			bytes = new byte[size];
+		}
+	}
+
+	private void fill() {
+		try {
+			for(;;) {
+				Buffer buffer = freeBuffers.take();
+				int length = 0;
+				try {
+					int n = 0;
+					while(length < buffer.bytes.length && (n = in.read(buffer.bytes, length, buffer.bytes.length - length)) >= 0) {
+						length += n;
+					}
+					if(length > 0) {
+						buffer.length = length;
+						filledBuffers.put(buffer);
+						if(n >= 0) {
+							continue;
+						}
+						buffer = freeBuffers.take();
+					}
+					buffer.length = -1;
+				} catch(IOException e) {
+					buffer.length = -1;
+					buffer.exception = e;
+				} catch(RuntimeException | Error e) {
+					// Posted too, so that read does not wait for a buffer that never comes.
+					buffer.length = -1;
+					buffer.exception = new IOException(e);
+				}
+				filledBuffers.put(buffer);
+				return;
+			}
+		} catch(InterruptedException e) {
+			// Closed. Nothing to do.
+		}
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if(!open) {
+			throw new ClosedChannelException();
+		}
+		if(exception != null) {
+			throw exception;
+		}
+		if(eof) {
+			return -1;
+		}
+		while(buffer == null || position == buffer.length) {
+			if(buffer != null) {
+				freeBuffers.add(buffer);
+			}
+			try {
+				buffer = filledBuffers.take();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			position = 0;
+			if(buffer.exception != null) {
+				exception = buffer.exception;
+				buffer = null;
+				throw exception;
+			}
+			if(buffer.length < 0) {
+				eof = true;
+				return -1;
+			}
+		}
+		int n = Math.min(dst.remaining(), buffer.length - position);
+		dst.put(buffer.bytes, position, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(open) {
+			open = false;
+			thread.interrupt();
+			in.close();
+		}
+	}
+
+	ReadAheadChannel(InputStream in, int depth) {
+		this.in = in;
+		freeBuffers = new ArrayBlockingQueue<Buffer>(depth);
+		filledBuffers = new ArrayBlockingQueue<Buffer>(depth);
+		for(int i = 0; i < depth; i++) {
+			freeBuffers.add(new Buffer(BUFFER_SIZE));
+		}
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				fill();
+			}
+		}, "Sort read-ahead");
+		thread.setDaemon(true);
+		thread.start();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+package sophie.tools.textfile.sort;
+
+import java.util.Arrays;
+
+abstract class RowSorter {
+	// Sorts rows, the indexes of the records of a chunk, by a stable MSD radix sort on the bytes
+	// digit gives. Ranges smaller than COMPARATOR_THRESHOLD and those still tied at depthLimit
+	// are merge sorted by compare, and rows compare in their order when it finds no difference.
+	static final int COMPARATOR_THRESHOLD = 32;	// ranges smaller than this are merge sorted
+	final int depthLimit;
+	int[] rows = new int[0];	// the rows in sorted order
+	int[] work = new int[0];
+	int[][] counts;
+
+	abstract int digit(int row, int depth);	// 0 past the end of a key, or 1 + the byte at depth
+
+	abstract int compare(int thisRow, int thatRow, int depth);	// of rows with the same first depth bytes
+
+	int sharedDepth(int start, int limit, int depth) {
+		// The depth all the rows of the range share, for subclasses that can tell it at once.
+		return depth;
+	}
+
+	private int compareRows(int thisRow, int thatRow, int depth) {
+		int comp = compare(thisRow, thatRow, depth);
+		return (comp != 0)? comp: Integer.compare(thisRow, thatRow);
+	}
+
+	void mergeSort(int start, int limit, int depth) {
+		if(limit - start < 8) {
+			for(int i = start + 1; i < limit; i++) {
+				int row = rows[i];
+				int j = i;
+				for(; j > start && compareRows(rows[j - 1], row, depth) > 0; j--) {
+					rows[j] = rows[j - 1];
+				}
+				rows[j] = row;
+			}
+			return;
+		}
+		final int middle = (start + limit) >>> 1;
+		mergeSort(start, middle, depth);
+		mergeSort(middle, limit, depth);
+		if(compareRows(rows[middle - 1], rows[middle], depth) < 0) {
+			return;
+		}
+		System.arraycopy(rows, start, work, start, limit - start);
+		for(int i = start, j = middle, k = start; k < limit; k++) {
+			if(j == limit || (i < middle && compareRows(work[i], work[j], depth) < 0)) {
+				rows[k] = work[i++];
+			} else {
+				rows[k] = work[j++];
+			}
+		}
+	}
+
+	private int[] count(int start, int limit, int depth) {
+		if(counts[depth] == null) {
+			counts[depth] = new int[257 + 1];
+		}
+		final int[] count = counts[depth];
+		Arrays.fill(count, 0);
+		for(int i = start; i < limit; i++) {
+			count[digit(rows[i], depth) + 1]++;
+		}
+		return count;
+	}
+
+	private void distribute(int start, int limit, int depth, int[] count) {
+		// count[b + 1] is the size of bucket b, and then count[b] is where bucket b starts.
+		for(int b = 0; b < 257; b++) {
+			count[b + 1] += count[b];
+		}
+		for(int i = start; i < limit; i++) {
+			int row = rows[i];
+			work[start + count[digit(row, depth)]++] = row;
+		}
+		System.arraycopy(work, start, rows, start, limit - start);
+		// count[b] is now where bucket b ends.
+	}
+
+	private void sort(int start, int limit, int depth) {
+		// The distribution is stable, so the rows of the same key stay in their order.
+		if(limit - start >= COMPARATOR_THRESHOLD) {
+			depth = sharedDepth(start, limit, depth);
+		}
+		for(;;) {
+			if(limit - start < COMPARATOR_THRESHOLD || depth == depthLimit) {
+				mergeSort(start, limit, depth);
+				return;
+			}
+			final int[] count = count(start, limit, depth);
+			final int first = digit(rows[start], depth);
+			if(count[first + 1] != limit - start) {
+				break;
+			}
+			if(first == 0) {
+				return;	// The same keys
+			}
+			depth++;	// All in one bucket
+		}
+		final int[] count = counts[depth];
+		distribute(start, limit, depth, count);
+		int bucketStart = start + count[0];	// Bucket 0 has the same keys.
+		for(int b = 1; b < 257; b++) {
+			int bucketLimit = start + count[b];
+			if(bucketLimit - bucketStart > 1) {
+				sort(bucketStart, bucketLimit, depth + 1);
+			}
+			bucketStart = bucketLimit;
+		}
+	}
+
+	void ensureRows(int count) {
+		if(rows.length < count) {
+			rows = new int[count];
+			work = new int[count];
+		}
+	}
+
+	void sortRows(int count) {
+		ensureRows(count);
+		for(int i = 0; i < count; i++) {
+			rows[i] = i;
+		}
+		sort(0, count, 0);
+	}
+
+	RowSorter(int depthLimit) {
+		this.depthLimit = depthLimit;
+		counts = new int[depthLimit][];
+	}
+}
\ No newline at end of file
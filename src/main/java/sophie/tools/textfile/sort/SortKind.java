@@ -1,5 +1,5 @@
-package sophie.tools.textfile.sort;
-
-public enum SortKind {
-	Text, GeneralNumeric, HumanNumeric, Numeric, Month, Random, Version
+package sophie.tools.textfile.sort;
+
+public enum SortKind {
+	Text, GeneralNumeric, HumanNumeric, Numeric, Month, Random, Version
 }
\ No newline at end of file
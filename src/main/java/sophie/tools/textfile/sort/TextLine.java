@@ -1,7 +1,11 @@
-package sophie.tools.textfile.sort;
-
-class TextLine {
-	long	seq;
-	Field[] fields;
-	String line;
+package sophie.tools.textfile.sort;
+
+class TextLine {
+	long	seq;
+	Field[] fields;
+	long prefix;	// compared before the fields (See KeyEncoder.prefix)
+	String line;
+	byte[] bytes;	// raw line in byte order mode, where line is null
+	byte[] collationKey;	// of the whole line, for the last-resort comparison with a collation locale
+	byte[] key;	// all keys encoded by KeyEncoder, where fields is null
 }
\ No newline at end of file
@@ -0,0 +1,886 @@
+package sophie.tools.textfile.sort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.Collator;
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+
+class TextLineParser {
+	// Takes the key fields out of a line. It is not thread safe; each thread needs its own parser.
+	static final double[] DOUBLE_POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	Configuration configuration;
+	KeyField[] keyFields;
+	boolean debug;
+	char decimalPoint;
+	char groupSeperator;
+	RandomHash randomHash;
+	Collator collator;	// makes the collation keys of text keys
+	ByteLine byteLine = new ByteLine();
+	FieldSplitter fieldSplitter;
+	FieldSplitter firstKeySplitter;	// splits only as far as the first key needs
+	CsvSplitter csvSplitter;
+	KeyEncoder keyEncoder;
+	KeyExtractor[] plan;
+	boolean lazy;	// keys after the first are taken when a comparison reaches them
+	int keyStart;	// bounds of the key located last
+	int keyLimit;
+	HashMap<String, Integer> monthMap;
+	MonthTable monthTable;
+	int[] tokens = new int[64];	// version tokens being built
+	int tokenCount;
+	
+	private static boolean startsWith(String line, int i, int endFieldIndex, String word) {
+		return endFieldIndex - i >= word.length() && line.regionMatches(true, i, word, 0, word.length());
+	}
+	
+	private void takeGeneralNumeric(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex, boolean allowSIsuffix) {
+		// Takes the longest number at the start of the key like strtod does.
+		// Keys without a number are -2, NaN is -1 and numbers are 0 in signedMagnitude.
+		int i = startFieldIndex;
+		for(; i < endFieldIndex && line.charAt(i) <= ' '; i++) {
+			// Nothing to do. (The same blanks as String.trim)
+		}
+		int end = endFieldIndex;
+		for(; end > i && line.charAt(end - 1) <= ' '; end--) {
+			// Nothing to do.
+		}
+		final int numberStart = i;
+		boolean minus = false;
+		if(i < end && (line.charAt(i) == '+' || line.charAt(i) == '-')) {
+			minus = line.charAt(i) == '-';
+			i++;
+		}
+		if(i + 1 < end && line.charAt(i) == '0' && (line.charAt(i + 1) == 'x' || line.charAt(i + 1) == 'X')) {
+			try {
+				field.realNumber = Double.valueOf(line.substring(numberStart, end));	// Hexadecimal
+				field.signedMagnitude = 0;
+				return;
+			} catch(NumberFormatException e) {
+				// Takes the leading 0.
+			}
+		}
+		long mantissa = 0;
+		int digits = 0;		// significant digits
+		int exponent = 0;
+		boolean hasDigit = false;
+		for(; i < end && line.charAt(i) >= '0' && line.charAt(i) <= '9'; i++) {
+			hasDigit = true;
+			if(digits > 0 || line.charAt(i) != '0') {
+				if(digits < 19) {
+					mantissa = mantissa * 10 + (line.charAt(i) - '0');
+				} else {
+					exponent++;
+				}
+				digits++;
+			}
+		}
+		if(i < end && line.charAt(i) == '.') {
+			i++;
+			for(; i < end && line.charAt(i) >= '0' && line.charAt(i) <= '9'; i++) {
+				hasDigit = true;
+				if(digits > 0 || line.charAt(i) != '0') {
+					if(digits < 19) {
+						mantissa = mantissa * 10 + (line.charAt(i) - '0');
+						exponent--;
+					}
+					digits++;
+				} else {
+					exponent--;
+				}
+			}
+		}
+		if(!hasDigit) {
+			int wordStart = (numberStart < end && (line.charAt(numberStart) == '+' || line.charAt(numberStart) == '-'))? numberStart + 1: numberStart;
+			if(startsWith(line, wordStart, end, "NaN")) {
+				field.signedMagnitude = -1;
+				field.realNumber = Double.NaN;
+			} else if(startsWith(line, wordStart, end, "Inf")) {
+				field.signedMagnitude = 0;
+				field.realNumber = minus? Double.NEGATIVE_INFINITY: Double.POSITIVE_INFINITY;
+			} else {
+				field.signedMagnitude = -2;
+				field.realNumber = 0;
+			}
+			return;
+		}
+		if(i + 1 < end && (line.charAt(i) == 'e' || line.charAt(i) == 'E')) {
+			int j = i + 1;
+			boolean exponentMinus = false;
+			if(line.charAt(j) == '+' || line.charAt(j) == '-') {
+				exponentMinus = line.charAt(j) == '-';
+				j++;
+			}
+			if(j < end && line.charAt(j) >= '0' && line.charAt(j) <= '9') {
+				int e = 0;
+				for(; j < end && line.charAt(j) >= '0' && line.charAt(j) <= '9'; j++) {
+					if(e < 100000) {
+						e = e * 10 + (line.charAt(j) - '0');
+					}
+				}
+				exponent += exponentMinus? -e: e;
+				i = j;
+			}
+		}
+		final double realNumber;
+		if(digits <= 15 && exponent >= -22 && exponent <= 22) {
+			// Both the mantissa and the power of ten are exact, so is the rounding.
+			double value = mantissa;
+			value = (exponent >= 0)? value * DOUBLE_POWERS_OF_TEN[exponent]: value / DOUBLE_POWERS_OF_TEN[-exponent];
+			realNumber = minus? -value: value;
+		} else {
+			realNumber = Double.parseDouble(line.substring(numberStart, i));
+		}
+		field.signedMagnitude = 0;
+		field.realNumber = realNumber;
+	}
+	
+	private boolean isGroupSeparator(String line, int i, int endFieldIndex) {
+		char c = line.charAt(i);
+		return c == groupSeperator
+				|| (groupSeperator == 0xa0 && c == ' ' && i + 1 < endFieldIndex && Character.isDigit(line.charAt(i + 1))) // French has 0xa0 as group separator
+				|| (decimalPoint == ',' && c == '.'); // not in the specification but seems helpful
+	}
+	
+	private void takeSIsuffix(Field field, String line, int i, int endFieldIndex) {
+		if(i < endFieldIndex) {
+			char suffix = line.charAt(i);
+			if(suffix == 'k') suffix = 'K';
+			// suffix = Character.toUpperCase(suffix); // This one relaxes the specification.
+			int index = Sort.SIunit.indexOf(suffix);
+			if(index >= 0) {
+				int sign = (field.signedMagnitude >= 0)? 1: -1;
+				field.signedMagnitude = (short)(sign * (index + 1));
+			}
+		}
+	}
+	
+	private void takeNumeric(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex, boolean allowSIsuffix) {
+		// Packs the digits into field.mantissa and field.scale. Longer numbers and
+		// non-ASCII digits are kept as digit arrays by takeNumericDigits.
+		int i = startFieldIndex;
+		for(; i < endFieldIndex && Character.isWhitespace(line.charAt(i)); i++) {
+			// Nothing to do;
+		}
+		if(i < endFieldIndex && line.charAt(i) == '-') {
+			field.signedMagnitude = -1;
+			i++;
+		}
+		boolean hasLeadingZero = false;
+		for(; i < endFieldIndex && (line.charAt(i) == '0' || isGroupSeparator(line, i, endFieldIndex)); i++) {
+			hasLeadingZero = true;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		for(; i < endFieldIndex; i++) {
+			char c = line.charAt(i);
+			if(c >= '0' && c <= '9') {
+				if(++digits > Field.MAX_PACKED_DIGITS) {
+					takeNumericDigits(keyField, field, line, startFieldIndex, endFieldIndex, allowSIsuffix);
+					return;
+				}
+				mantissa = mantissa * 10 + (c - '0');
+			} else if(Character.isDigit(c)) {
+				takeNumericDigits(keyField, field, line, startFieldIndex, endFieldIndex, allowSIsuffix);
+				return;
+			} else if(!isGroupSeparator(line, i, endFieldIndex)) {
+				break;
+			}
+		}
+		boolean empty = digits == 0 && !hasLeadingZero;
+		int scale = 0;
+		if(i < endFieldIndex && line.charAt(i) == decimalPoint) {
+			empty = false;
+			i++;
+			for(; i < endFieldIndex; i++) {
+				char c = line.charAt(i);
+				if(c >= '0' && c <= '9') {
+					if(++digits > Field.MAX_PACKED_DIGITS) {
+						takeNumericDigits(keyField, field, line, startFieldIndex, endFieldIndex, allowSIsuffix);
+						return;
+					}
+					mantissa = mantissa * 10 + (c - '0');
+					scale++;
+				} else if(Character.isDigit(c)) {
+					takeNumericDigits(keyField, field, line, startFieldIndex, endFieldIndex, allowSIsuffix);
+					return;
+				} else if(!isGroupSeparator(line, i, endFieldIndex)) {
+					break;
+				}
+			}
+		}
+		if(allowSIsuffix) {
+			takeSIsuffix(field, line, i, endFieldIndex);
+		}
+		field.mantissa = mantissa;
+		field.scale = (short)(empty? -1: scale);
+	}
+	
+	private void takeNumericDigits(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex, boolean allowSIsuffix) {
+		StringBuilder intBuilder = new StringBuilder();
+		StringBuilder fracBuilder = new StringBuilder();
+		int i = startFieldIndex;
+		// Let's skip leading blanks.
+		for(; i < endFieldIndex && Character.isWhitespace(line.charAt(i)); i++) {
+			// Nothing to do;
+		}
+		if(i < endFieldIndex && line.charAt(i) == '-') {
+			field.signedMagnitude = -1;
+			i++;
+		}
+		// Let's skip leading zeros.
+		boolean hasLeadingZero = false;
+		for(; i < endFieldIndex &&
+				(line.charAt(i) == '0' ||
+				line.charAt(i) == groupSeperator ||
+				(groupSeperator == 0xa0 && line.charAt(i) == ' ' && i + 1 < endFieldIndex && Character.isDigit(line.charAt(i+1))) // French has 0xa0 as group separator
+				// || (decimalPoint == '.' && line.charAt(i) == ',') || // not in the specification but seems helpful
+				|| (decimalPoint == ',' && line.charAt(i) == '.') // not in the specification but seems helpful
+				);
+			i++) {
+			hasLeadingZero = true;
+		}
+		for(; i < endFieldIndex &&
+				(Character.isDigit(line.charAt(i)) ||
+				line.charAt(i) == groupSeperator ||
+				(groupSeperator == 0xa0 && line.charAt(i) == ' ' && i + 1 < endFieldIndex && Character.isDigit(line.charAt(i+1))) // French has 0xa0 as group separator
+				// || (decimalPoint == '.' && line.charAt(i) == ',') || // not in the specification but seems helpful
+				|| (decimalPoint == ',' && line.charAt(i) == '.') // not in the specification but seems helpful
+				);
+			i++) {
+			if(Character.isDigit(line.charAt(i)))
+				intBuilder.append(line.charAt(i));
+		}
+		if(intBuilder.length() == 0 && (hasLeadingZero || (i < endFieldIndex && line.charAt(i) == decimalPoint))) {
+			intBuilder.append('0');
+		}
+		if(i < endFieldIndex && line.charAt(i) == decimalPoint) {
+			i++;
+			for(; i < endFieldIndex &&
+					(Character.isDigit(line.charAt(i)) ||
+					line.charAt(i) == groupSeperator ||
+					(groupSeperator == 0xa0 && line.charAt(i) == ' ' && i + 1 < endFieldIndex && Character.isDigit(line.charAt(i+1))) // French has 0xa0 as group separator
+					// || (decimalPoint == '.' && line.charAt(i) == ',') || // not in the specification but seems helpful
+					|| (decimalPoint == ',' && line.charAt(i) == '.') // not in the specification but seems helpful
+					);
+				i++) {
+				if(Character.isDigit(line.charAt(i)))
+					fracBuilder.append(line.charAt(i));
+			}
+		}
+		if(allowSIsuffix) {
+			takeSIsuffix(field, line, i, endFieldIndex);
+		}
+		char[] intDigits = intBuilder.toString().toCharArray();
+		char[] fracDigits = fracBuilder.toString().toCharArray();
+		field.integralPart = new byte[intDigits.length];
+		for(int k = 0; k < intDigits.length; k++) {
+			field.integralPart[k] = (byte)intDigits[k];
+		}
+		field.fractionalPart = new byte[fracDigits.length];
+		for(int k = 0; k < fracDigits.length; k++) {
+			field.fractionalPart[k] = (byte)fracDigits[k];
+		}
+	}
+
+	private void takeMonth(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex) {
+		int i = startFieldIndex;
+		// Let's skip leading blanks.
+		for(; i < endFieldIndex && Character.isWhitespace(line.charAt(i)); i++) {
+			// Nothing to do;
+		}
+		if(i < endFieldIndex) {
+			int c = line.charAt(i);
+			int begin = i;
+			i++;
+			if(Character.isDigit(c)) {
+				for(; i < endFieldIndex && Character.isDigit(line.charAt(i)); i++) {
+				}
+				int month = 0;
+				for(int k = begin; k < i && month <= 12; k++) {
+					month = month * 10 + Character.digit(line.charAt(k), 10);
+				}
+				if(month > 12) {
+					month = 0;
+				}
+				field.month = (short)month;
+			} else if(Character.isJavaIdentifierPart(c)) {
+				for(; i < endFieldIndex && Character.isJavaIdentifierPart(line.charAt(i)); i++) {
+				}
+				int month = monthTable.lookup(line, begin, i);
+				if(month == MonthTable.UNKNOWN) {
+					Integer mapped = monthMap.get(line.substring(begin, i).toUpperCase());
+					month = (mapped != null)? mapped: 0;
+				} else if(month == MonthTable.NOT_FOUND) {
+					month = 0;
+				}
+				field.month = (short)month;
+			} else {
+				// Nothing to do. (field.month is already initialized)
+			}
+		} else {
+			// Nothing to do. (field.month is already initialized)
+		}
+	}
+
+	private void takeRandom(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex) {
+		if(Sort.GNU_SORT_COMPATIBLE) {
+			field.start = (short)startFieldIndex;
+			field.limit = (short)endFieldIndex;
+			field.text = line.substring(startFieldIndex, endFieldIndex);
+		}
+		if(keyField.ignore || keyField.translate) {
+			line = Sort.transform(keyField, line, startFieldIndex, endFieldIndex);
+			startFieldIndex = 0;
+			endFieldIndex = line.length();
+		}
+		randomHash.hash(line, startFieldIndex, endFieldIndex);
+		field.randomHigh = randomHash.high;
+		field.randomLow = randomHash.low;
+	}
+	
+	private void takeVersion(KeyField keyField, Field field, String line, int startFieldIndex, int endFieldIndex)  {
+		int i = startFieldIndex;
+		for(; i < endFieldIndex && Character.isWhitespace(line.charAt(i)); i++) {
+			// Nothing to do;
+		}
+		int begin = i;
+		for(; i < endFieldIndex && Sort.isPrintable(line.charAt(i)) && !Character.isWhitespace(line.charAt(i)); i++) {
+			// Nothing to do;
+		}
+		String version = line.substring(begin, i);
+		field.version = version;
+		// A hidden file name is only compared without its dot. (See TextLineComparator.versionCompare)
+		int start = version.startsWith(".")? 1: 0;
+		int suffix = versionSuffix(version, start);
+		tokenCount = 0;
+		addVersionTokens(version, start, suffix);
+		field.versionSuffix = tokenCount;
+		addVersionTokens(version, suffix, version.length());
+		field.versionTokens = Arrays.copyOf(tokens, tokenCount);
+	}
+	
+	private static boolean isSuffixChar(char c) {
+		return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '~';
+	}
+	
+	private static int versionSuffix(String version, int start) {
+		// Where TextLineComparator.versionSuffixPattern would find the suffix.
+		int suffix = version.length();
+		for(;;) {
+			int i = suffix;
+			for(; i > start && (isSuffixChar(version.charAt(i - 1)) || (version.charAt(i - 1) >= '0' && version.charAt(i - 1) <= '9')); i--) {
+				// Nothing to do.
+			}
+			if(i - 1 >= start && i < suffix && version.charAt(i - 1) == '.' && isSuffixChar(version.charAt(i))) {
+				suffix = i - 1;
+			} else {
+				return suffix;
+			}
+		}
+	}
+	
+	private void addToken(int token) {
+		if(tokenCount == tokens.length) {
+			tokens = Arrays.copyOf(tokens, tokens.length * 2);
+		}
+		tokens[tokenCount++] = token;
+	}
+	
+	private void addVersionTokens(String version, int start, int limit) {
+		// Each non-digit run is added in pvrOrder and ends with 0. Each digit run follows
+		// without leading zeros, as its length and its digits, so a longer number is greater.
+		// Trailing zeros are dropped; the comparator reads past the end as 0.
+		final int base = tokenCount;
+		int i = start;
+		while(i < limit) {
+			for(; i < limit && !Character.isDigit(version.charAt(i)); i++) {
+				addToken(TextLineComparator.pvrOrder(version.charAt(i)));
+			}
+			addToken(0);
+			for(; i < limit && version.charAt(i) == '0'; i++) {
+				// Nothing to do.
+			}
+			int lengthIndex = tokenCount;
+			addToken(0);
+			for(; i < limit && Character.isDigit(version.charAt(i)); i++) {
+				addToken(version.charAt(i));
+			}
+			tokens[lengthIndex] = tokenCount - lengthIndex - 1;
+		}
+		for(; tokenCount > base && tokens[tokenCount - 1] == 0; tokenCount--) {
+			// Nothing to do.
+		}
+	}
+	
+	private String keyText(TextLine textLine, int start, int limit) {
+		if(textLine.bytes != null) {
+			return new String(textLine.bytes, start, limit - start, configuration.inputEncoding);
+		} else {
+			return textLine.line.substring(start, limit);
+		}
+	}
+	
+	abstract class KeyExtractor {
+		// One key of the plan. The bounds of the key are decided once per key spec.
+		final int index;
+		final KeyField keyField;
+		final boolean wholeLine;
+		final int startIndex;	// index of the start field in the field indexes
+		final int endIndex;		// index of the end field in the field indexes
+		final int startChar;
+		final int endChar;
+		final boolean skipStartBlanks;
+		final boolean skipEndBlanks;
+		
+		abstract void take(Field field, String line, int start, int limit) throws IOException;
+		
+		void takeCsv(Field field, String value, int start, int limit) throws IOException {
+			take(field, value, start, limit);
+		}
+		
+		final void locate(CharSequence text, int[] fieldIndexes, int fieldCount) {
+			final int length = text.length();
+			int startFieldIndex;
+			int startFieldLimit;
+			int endFieldIndex;
+			int endFieldLimit;
+			if(wholeLine) {
+				startFieldIndex = 0;
+				startFieldLimit = endFieldIndex = endFieldLimit = length; 
+			} else {
+				if(keyField.startField <= fieldCount) {
+					startFieldIndex = fieldIndexes[startIndex];
+					startFieldLimit = fieldIndexes[startIndex + 1];
+				} else {
+					startFieldIndex = startFieldLimit = length;
+				}
+				if(keyField.endField <= fieldCount) {
+					endFieldIndex = fieldIndexes[endIndex];
+					endFieldLimit = fieldIndexes[endIndex + 1];
+				} else {
+					endFieldIndex = endFieldLimit = length;
+				}
+			}
+			if(skipStartBlanks) {
+				for(; startFieldIndex < (Sort.GNU_SORT_COMPATIBLE? length: startFieldLimit) && Character.isWhitespace(text.charAt(startFieldIndex)); startFieldIndex++) {
+					// Nothing to do
+				}
+			}
+			startFieldIndex = Math.min(startFieldLimit, startFieldIndex + startChar);
+			/*
+			// up to version 1.0.2
+			if(keyField.endChar == 0) {
+				endFieldIndex = endFieldLimit;
+			} else {
+				if(keyField.skipEndBlanks) {
+					for(; endFieldIndex < (Sort.GNU_SORT_COMPATIBLE? line.length(): endFieldLimit) && Character.isWhitespace(line.charAt(endFieldIndex)); endFieldIndex++) {
+						// Nothing to do
+					}
+				}
+				endFieldIndex = Math.min(endFieldLimit, endFieldIndex + keyField.endChar);
+			}
+			// end of up to version 1.0.2
+			*/
+			// version 1.1.0
+			if(endChar != 0) {
+				endFieldLimit = Math.min(endFieldLimit, endFieldIndex + endChar);
+			}
+			if(skipEndBlanks) {
+				for(; endFieldLimit > endFieldIndex && Character.isWhitespace(text.charAt(endFieldLimit - 1)); endFieldLimit--) {
+					// Nothing to do
+				}
+			}
+			endFieldIndex = endFieldLimit;
+			if(endFieldIndex < startFieldIndex) {
+				endFieldIndex = startFieldIndex;
+			}
+			// end of version 1.1.0
+			keyStart = startFieldIndex;
+			keyLimit = endFieldIndex;
+		}
+		
+		KeyExtractor(int index, KeyField keyField) {
+			this.index = index;
+			this.keyField = keyField;
+			wholeLine = keyField.startField == Integer.MAX_VALUE;
+			startIndex = keyField.startField > 0? (keyField.startField - 1) * 2: 0;
+			endIndex = keyField.endField > 0 && keyField.endField != Integer.MAX_VALUE? (keyField.endField - 1) * 2: 0;
+			startChar = (keyField.startChar > 0)? keyField.startChar - 1: 0;
+			endChar = keyField.endChar;
+			skipStartBlanks = keyField.skipStartBlanks;
+			skipEndBlanks = keyField.skipEndBlanks;
+		}
+	}
+	
+	final class TextKey extends KeyExtractor {
+		@Override
+		void take(Field field, String line, int start, int limit) {
+			field.start = (short)start;
+			field.limit = (short)limit;
+			field.text = null;
+			if(collator != null) {
+				field.collationKey = collator.getCollationKey(line.substring(start, limit)).toByteArray();
+			}
+		}
+		
+		@Override
+		void takeCsv(Field field, String value, int start, int limit) {
+			field.start = -1;
+			field.limit = -1;
+			if(collator != null) {
+				field.collationKey = collator.getCollationKey(value.substring(start, limit)).toByteArray();
+			} else {
+				field.text = value.substring(start, limit);
+			}
+		}
+		
+		TextKey(int index, KeyField keyField) {
+			super(index, keyField);
+		}
+	}
+	
+	final class FoldedTextKey extends KeyExtractor {
+		// -d, -i or -f on a text key. The key is kept folded, so it is folded once per line.
+		@Override
+		void take(Field field, String line, int start, int limit) {
+			field.start = -1;
+			field.limit = -1;
+			String text = Sort.transform(keyField, line, start, limit);
+			if(collator != null) {
+				field.collationKey = collator.getCollationKey(text).toByteArray();
+			} else {
+				field.text = text;
+			}
+		}
+		
+		FoldedTextKey(int index, KeyField keyField) {
+			super(index, keyField);
+		}
+	}
+	
+	final class GeneralNumericKey extends KeyExtractor {
+		@Override
+		void take(Field field, String line, int start, int limit) {
+			takeGeneralNumeric(keyField, field, line, start, limit, true);
+		}
+		
+		GeneralNumericKey(int index, KeyField keyField) {
+			super(index, keyField);
+		}
+	}
+	
+	final class NumericKey extends KeyExtractor {
+		final boolean allowSIsuffix;
+		
+		@Override
+		void take(Field field, String line, int start, int limit) {
+			takeNumeric(keyField, field, line, start, limit, allowSIsuffix);
+		}
+		
+		NumericKey(int index, KeyField keyField, boolean allowSIsuffix) {
+			super(index, keyField);
+			this.allowSIsuffix = allowSIsuffix;
+		}
+	}
+	
+	final class MonthKey extends KeyExtractor {
+		@Override
+		void take(Field field, String line, int start, int limit) {
+			takeMonth(keyField, field, line, start, limit);
+		}
+		
+		MonthKey(int index, KeyField keyField) {
+			super(index, keyField);
+		}
+	}
+	
+	final class RandomKey extends KeyExtractor {
+		@Override
+		void take(Field field, String line, int start, int limit) {
+			takeRandom(keyField, field, line, start, limit);
+		}
+		
+		RandomKey(int index, KeyField keyField) {
+			super(index, keyField);
+		}
+	}
+	
+	final class VersionKey extends KeyExtractor {
+		@Override
+		void take(Field field, String line, int start, int limit) {
+			takeVersion(keyField, field, line, start, limit);
+		}
+		
+		VersionKey(int index, KeyField keyField) {
+			super(index, keyField);
+		}
+	}
+	
+	final class TransformedKey extends KeyExtractor {
+		// -d, -i or -f on a key that is parsed when it is read.
+		final KeyExtractor key;
+		
+		@Override
+		void take(Field field, String line, int start, int limit) throws IOException {
+			String transformed = Sort.transform(keyField, line, start, limit);
+			key.take(field, transformed, 0, transformed.length());
+		}
+		
+		TransformedKey(KeyExtractor key) {
+			super(key.index, key.keyField);
+			this.key = key;
+		}
+	}
+	
+	private KeyExtractor compile(int index, KeyField keyField) {
+		final KeyExtractor key;
+		switch(keyField.sortKind) {
+		case Text:
+			return (keyField.ignore || keyField.translate)? new FoldedTextKey(index, keyField): new TextKey(index, keyField);
+		case GeneralNumeric:
+			key = new GeneralNumericKey(index, keyField);
+			break;
+		case HumanNumeric:
+			key = new NumericKey(index, keyField, true);
+			break;
+		case Numeric:
+			key = new NumericKey(index, keyField, false);
+			break;
+		case Month:
+			key = new MonthKey(index, keyField);
+			break;
+		case Random:
+			return new RandomKey(index, keyField);	// Transforms by itself
+		case Version:
+			key = new VersionKey(index, keyField);
+			break;
+		default:
+			throw new IllegalStateException("Unknown SortKind");
+		}
+		return (keyField.ignore || keyField.translate)? new TransformedKey(key): key;
+	}
+	
+	private void compilePlan() {
+		plan = new KeyExtractor[keyFields.length];
+		for(int i = 0; i < keyFields.length; i++) {
+			plan[i] = compile(i, keyFields[i]);
+		}
+	}
+	
+	private void setUpLazy() {
+		// --debug shows every key as it is read, and CSV records are not split again.
+		lazy = !debug && !configuration.csv && !configuration.normalizedKeys && keyFields.length > 1;
+		if(lazy) {
+			firstKeySplitter = new FieldSplitter(configuration, 1);
+		}
+	}
+	
+	private RuntimeException keyError(int fileNumber, int lineNumber, KeyExtractor key, Exception e) {
+		return new RuntimeException("file: " + fileNumber + " line: " + lineNumber + " key[" + key.index +  "] , " + key.keyField.sortKind + ": " + e, e);
+	}
+	
+	void parse(TextLine textLine, int fileNumber, int lineNumber) throws IOException {
+		final String line = textLine.line;
+		final CharSequence text = (textLine.bytes != null)? byteLine.set(textLine.bytes): line;
+		final KeyExtractor[] plan = this.plan;
+		if(plan.length != 0) {
+			final Field[] fields = textLine.fields = new Field[plan.length];
+			if(configuration.csv) {
+				final CsvSplitter csvSplitter = this.csvSplitter;
+				csvSplitter.split(line);
+				for(KeyExtractor key: plan) {
+					KeyField keyField = key.keyField;
+					Field field = fields[key.index] = new Field();
+					int valueIndex = key.wholeLine? 0: keyField.startField - 1;
+					String value = (valueIndex  < csvSplitter.count)? csvSplitter.value(line, valueIndex): "";
+					int startIndex = Math.min(value.length(), key.startChar);
+					int limitIndex = key.endChar != 0? Math.min(value.length(), key.endChar): value.length();
+					if(key.skipStartBlanks) {
+						for(; startIndex < limitIndex && Character.isWhitespace(value.charAt(startIndex)); startIndex++) {
+							// Nothing to do
+						}
+					}
+					if(key.skipEndBlanks) {
+						for(; limitIndex > startIndex && Character.isWhitespace(value.charAt(limitIndex - 1)); limitIndex--) {
+							// Nothing to do
+						}
+					}
+					if(debug) {
+						System.out.println("file: " + fileNumber + " line: " + lineNumber + " key[" + key.index +  "] , " + keyField.sortKind + "(" + startIndex + ", " + limitIndex + "): \"" + value.substring(startIndex, limitIndex) + "\"");
+					}
+					try {
+						key.takeCsv(field, value, startIndex, limitIndex);
+					} catch(Exception e) {
+						throw keyError(fileNumber, lineNumber, key, e);
+					}
+				}
+				
+			} else {
+				final FieldSplitter fieldSplitter = lazy? firstKeySplitter: this.fieldSplitter;
+				fieldSplitter.split(text);
+				final int[] fieldIndexes = fieldSplitter.indexes;
+				final int fieldCount = fieldSplitter.count;
+				for(KeyExtractor key: plan) {
+					if(lazy && key.index > 0) {
+						break;	// Left to materialize.
+					}
+					Field field = fields[key.index] = new Field();
+					key.locate(text, fieldIndexes, fieldCount);
+					if(debug) {
+						System.out.println("file: " + fileNumber + " line: " + lineNumber + " key[" + key.index +  "] , " + key.keyField.sortKind + "(" + keyStart + ", " + keyLimit + "): \"" + keyText(textLine, keyStart, keyLimit) + "\"");
+					}
+					try {
+						key.take(field, line, keyStart, keyLimit);
+					} catch(Exception e) {
+						throw keyError(fileNumber, lineNumber, key, e);
+					}
+				}
+			}
+		}
+		if(plan.length == 0 && collator != null) {
+			// Every comparison is the last-resort one.
+			textLine.collationKey = collator.getCollationKey(line).toByteArray();
+		}
+		if(configuration.normalizedKeys) {
+			textLine.key = keyEncoder.encode(textLine);
+			textLine.fields = null;
+		} else {
+			textLine.prefix = keyEncoder.prefix(textLine);
+		}
+	}
+
+	Field materialize(TextLine textLine, int index) {
+		// Takes a key parse left out and caches it on the line.
+		final String line = textLine.line;
+		final CharSequence text = (textLine.bytes != null)? byteLine.set(textLine.bytes): line;
+		final KeyExtractor key = plan[index];
+		fieldSplitter.split(text);
+		key.locate(text, fieldSplitter.indexes, fieldSplitter.count);
+		Field field = new Field();
+		try {
+			key.take(field, line, keyStart, keyLimit);
+		} catch(Exception e) {
+			throw new RuntimeException("line: " + textLine.seq + " key[" + key.index +  "] , " + key.keyField.sortKind + ": " + e, e);
+		}
+		textLine.fields[index] = field;
+		return field;
+	}
+	
+	private void setUpRandomHash() throws IOException {
+		// The source is read once, so that every parser hashes alike even with /dev/urandom.
+		if(configuration.randomSeed == null) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			if(configuration.randomSource != null) {
+				InputStream in = new FileInputStream(configuration.randomSource);
+				try {
+					int c;
+					for(int i = 0; i < 4096 && (c = in.read()) != -1 ; i++) {
+						out.write(c);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			configuration.randomSeed = out.toByteArray();
+		}
+		randomHash = new RandomHash(configuration.randomSeed);
+	}
+			
+	TextLineParser(Configuration configuration) throws IOException {
+		this.configuration = configuration;
+		this.keyFields = configuration.keyFields;
+		debug = configuration.debug;
+		fieldSplitter = new FieldSplitter(configuration);
+		if(configuration.csv) {
+			csvSplitter = new CsvSplitter(configuration);
+		}
+		if(configuration.textLocale != null && !configuration.byteOrder) {
+			collator = Collator.getInstance(configuration.textLocale);
+		}
+		compilePlan();
+		setUpLazy();
+		keyEncoder = new KeyEncoder(configuration);
+		if(configuration.numberLocale != null) {
+  	  		NumberFormat numberFormat = (DecimalFormat)DecimalFormat.getInstance(configuration.numberLocale);
+  	  		if(numberFormat instanceof DecimalFormat) {
+  	  			DecimalFormat decimalFormat = (DecimalFormat) numberFormat;
+  	  			DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
+  	  			decimalPoint = symbols.getDecimalSeparator();
+  	  			groupSeperator = symbols.getGroupingSeparator();
+   	  		} else {
+				decimalPoint = '.';
+				groupSeperator = ',';
+   	  		}
+		} else {
+			decimalPoint = '.';
+			groupSeperator = ',';
+		}
+		monthMap = new HashMap<String, Integer>();
+		HashSet<Locale> localeSet = new HashSet<Locale>();
+		localeSet.add(Locale.forLanguageTag("en-US"));
+		localeSet.add(Locale.getDefault());
+		if(configuration.textLocale != null) {
+			localeSet.add(configuration.textLocale);
+		}
+		if(configuration.numberLocale != null) {
+			localeSet.add(configuration.numberLocale);
+		}
+		for(Locale locale: localeSet) {
+			DateFormatSymbols dateFormatSymbols = DateFormatSymbols.getInstance(locale);
+			String[] shortMonthNames = dateFormatSymbols.getShortMonths();
+			String[] monthNames = dateFormatSymbols.getMonths();
+			// For some reason, shortMonthNames.length == monthNames.length == 13
+			for(int i = 0; i < shortMonthNames.length && i < 12; i++) {
+				monthMap.put(shortMonthNames[i].toUpperCase(), i + 1);
+			}
+			for(int i = 0; i < monthNames.length && i < 12; i++) {
+				monthMap.put(monthNames[i].toUpperCase(), i + 1);
+			}
+		}
+		for(KeyField keyField: keyFields) {
+			if(keyField.sortKind == SortKind.Month) {
+				monthTable = new MonthTable(monthMap);
+				break;
+			}
+		}
+		if(configuration.hasRandom) {
+			setUpRandomHash();
+		}
+	}
+	
+	TextLineParser(TextLineParser parser) throws IOException {
+		// Shares the read-only tables of parser.
+		this.configuration = parser.configuration;
+		this.keyFields = parser.keyFields;
+		this.debug = parser.debug;
+		this.fieldSplitter = new FieldSplitter(parser.configuration);
+		if(configuration.csv) {
+			csvSplitter = new CsvSplitter(configuration);
+		}
+		if(configuration.textLocale != null && !configuration.byteOrder) {
+			collator = Collator.getInstance(configuration.textLocale);
+		}
+		compilePlan();
+		setUpLazy();
+		keyEncoder = new KeyEncoder(configuration);
+		this.decimalPoint = parser.decimalPoint;
+		this.groupSeperator = parser.groupSeperator;
+		this.monthMap = parser.monthMap;
+		this.monthTable = parser.monthTable;
+		if(parser.randomHash != null) {
+			randomHash = new RandomHash(parser.randomHash.seed1, parser.randomHash.seed2);
+		}
+	}
+}
\ No newline at end of file
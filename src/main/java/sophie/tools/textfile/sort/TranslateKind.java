@@ -1,5 +1,5 @@
-package sophie.tools.textfile.sort;
-
-public enum TranslateKind {
-	ToUpper
+package sophie.tools.textfile.sort;
+
+public enum TranslateKind {
+	ToUpper
 }
\ No newline at end of file